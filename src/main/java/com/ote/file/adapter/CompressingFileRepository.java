@@ -0,0 +1,517 @@
+package com.ote.file.adapter;
+
+import com.ote.file.api.model.File;
+import com.ote.file.api.model.Folder;
+import com.ote.file.api.model.Page;
+import com.ote.file.spi.IFileRepository;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.NoSuchFileException;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import java.util.zip.Adler32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Decorator of an IFileRepository which compresses the stored contents with a Deflater
+ * <p>
+ * Every file written through the repository starts with a magic number followed by frames, even when the compression is disabled:
+ * each write or append adds a frame, which is either raw (compression disabled, content below the threshold or not compressible),
+ * deflated, or deflated with the preset dictionary of the compression.
+ * Files which do not start with the magic number (written without this repository) are read as is, and contents appended to them
+ * remain raw. Such a file which happens to start with the magic number would be misread, hence files written without this repository
+ * should be rewritten through it before being read through it.
+ * <p>
+ * The compression is configured per application or per perimeter. As files do not know their application, the folders of a perimeter
+ * should be registered with addFolder. Otherwise the perimeter of a folder is learnt when the file service checks or lists it
+ * (which it always does before writing): a folder which has not been registered nor seen yet uses the default compression,
+ * and a folder shared by several perimeters keeps the perimeter it was first seen with.
+ */
+public class CompressingFileRepository implements IFileRepository {
+
+    private static final byte[] Magic = {0x00, 'Z', 'F', 0x01};
+
+    private static final byte RawFrame = 0;
+    private static final byte DeflatedFrame = 1;
+    private static final byte DictionaryFrame = 2;
+
+    private final IFileRepository fileRepository;
+
+    private final Compression defaultCompression;
+
+    private final Map<String, Compression> applicationCompressions = new ConcurrentHashMap<>();
+
+    private final Map<Key, Compression> perimeterCompressions = new ConcurrentHashMap<>();
+
+    private final Map<Integer, byte[]> dictionaries = new ConcurrentHashMap<>();
+
+    private final Map<Folder, Key> folderPerimeters = new ConcurrentHashMap<>();
+
+    public CompressingFileRepository(IFileRepository fileRepository, Compression defaultCompression) {
+        this.fileRepository = fileRepository;
+        this.defaultCompression = defaultCompression;
+        registerDictionary(defaultCompression);
+    }
+
+    public void setCompression(String application, Compression compression) {
+        registerDictionary(compression);
+        applicationCompressions.put(application, compression);
+    }
+
+    public void setCompression(String application, String perimeter, Compression compression) {
+        registerDictionary(compression);
+        perimeterCompressions.put(new Key(application, perimeter), compression);
+    }
+
+    /**
+     * register the perimeter of the folder, which takes precedence over the perimeter learnt from the listings
+     */
+    public void addFolder(String application, String perimeter, Folder folder) {
+        folderPerimeters.put(folder, new Key(application, perimeter));
+    }
+
+    //region Listings
+    @Override
+    public Set<Folder> getFolders(String application, String perimeter) {
+        Set<Folder> folders = fileRepository.getFolders(application, perimeter);
+        folders.forEach(folder -> onFound(application, perimeter, folder));
+        return folders;
+    }
+
+    @Override
+    public Set<File> getFiles(String application, String perimeter, Folder folder) {
+        onFound(application, perimeter, folder);
+        return fileRepository.getFiles(application, perimeter, folder);
+    }
+
+    @Override
+    public Stream<Folder> streamFolders(String application, String perimeter) {
+        return fileRepository.streamFolders(application, perimeter).peek(folder -> onFound(application, perimeter, folder));
+    }
+
+    @Override
+    public Stream<File> streamFiles(String application, String perimeter, Folder folder) {
+        onFound(application, perimeter, folder);
+        return fileRepository.streamFiles(application, perimeter, folder);
+    }
+
+    @Override
+    public Page<File> getFiles(String application, String perimeter, Folder folder, int pageSize, String continuationToken) {
+        onFound(application, perimeter, folder);
+        return fileRepository.getFiles(application, perimeter, folder, pageSize, continuationToken);
+    }
+
+    @Override
+    public boolean isFound(String application, String perimeter, Folder folder) {
+        boolean found = fileRepository.isFound(application, perimeter, folder);
+        if (found) {
+            onFound(application, perimeter, folder);
+        }
+        return found;
+    }
+
+    @Override
+    public boolean isFound(String application, String perimeter, File file) {
+        boolean found = fileRepository.isFound(application, perimeter, file);
+        if (found) {
+            onFound(application, perimeter, file.getFolder());
+        }
+        return found;
+    }
+    //endregion
+
+    @Override
+    public void write(File file, byte[] content) {
+        fileRepository.write(file, compress(file, content, true));
+    }
+
+    @Override
+    public void append(File file, byte[] content) {
+        byte[] head = readHead(file);
+        if (head.length == 0) {
+            // new (or empty) files are created compressed
+            write(file, content);
+        } else if (Arrays.equals(head, Magic)) {
+            fileRepository.append(file, compress(file, content, false));
+        } else {
+            // files which were not compressed remain raw
+            fileRepository.append(file, content);
+        }
+    }
+
+    @Override
+    public void write(File file, InputStream content) {
+        fileRepository.write(file, compress(file, content, true));
+    }
+
+    @Override
+    public void append(File file, InputStream content) {
+        byte[] head = readHead(file);
+        if (head.length == 0) {
+            write(file, content);
+        } else if (Arrays.equals(head, Magic)) {
+            fileRepository.append(file, compress(file, content, false));
+        } else {
+            fileRepository.append(file, content);
+        }
+    }
+
+    @Override
+    public boolean isStagingAtomic() {
+        return fileRepository.isStagingAtomic();
+    }
+
+    @Override
+    public StagedFile stage(File file, byte[] content) {
+        return fileRepository.stage(file, compress(file, content, true));
+    }
+
+    @Override
+    public StagedFile stage(File file, InputStream content) {
+        return fileRepository.stage(file, compress(file, content, true));
+    }
+
+    /**
+     * the frames of the content are staged after the stored frames of the file, which are copied without being inflated
+     */
+    @Override
+    public StagedFile stageAppend(File file, InputStream content) {
+        byte[] head = readHead(file);
+        if (head.length == 0) {
+            return stage(file, content);
+        } else if (Arrays.equals(head, Magic)) {
+            return fileRepository.stageAppend(file, compress(file, content, false));
+        } else {
+            return fileRepository.stageAppend(file, content);
+        }
+    }
+
+    @Override
+    public byte[] read(File file) {
+        try (InputStream inputStream = openInputStream(file)) {
+            return IOUtils.toByteArray(inputStream);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * the frames are inflated while the stream is consumed
+     */
+    @Override
+    public InputStream openInputStream(File file) {
+        InputStream inputStream = new BufferedInputStream(fileRepository.openInputStream(file), ChunkSize);
+        try {
+            inputStream.mark(Magic.length);
+            byte[] magic = new byte[Magic.length];
+            if (IOUtils.read(inputStream, magic) == Magic.length && Arrays.equals(magic, Magic)) {
+                return new FramedInputStream(inputStream);
+            }
+            inputStream.reset();
+            return inputStream;
+        } catch (IOException e) {
+            try {
+                inputStream.close();
+            } catch (IOException closeException) {
+                e.addSuppressed(closeException);
+            }
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    //region Compression
+    private Compression getCompression(File file) {
+        Key key = file.getFolder() == null ? null : folderPerimeters.get(file.getFolder());
+        if (key == null) {
+            return defaultCompression;
+        }
+        Compression compression = perimeterCompressions.get(key);
+        if (compression == null) {
+            compression = applicationCompressions.getOrDefault(key.getApplication(), defaultCompression);
+        }
+        return compression;
+    }
+
+    private byte[] compress(File file, byte[] content, boolean withMagic) {
+        Compression compression = getCompression(file);
+        ByteArrayOutputStream output = new ByteArrayOutputStream(content.length / 2 + 32);
+        try (DataOutputStream frame = new DataOutputStream(output)) {
+            if (withMagic) {
+                frame.write(Magic);
+            }
+            byte[] dictionary = compression.getDictionary() != null && content.length <= compression.getDictionaryMaximumSize() ?
+                    compression.getDictionary() : null;
+            byte[] deflated = compression.isEnabled() && content.length >= compression.getThreshold() ?
+                    deflate(content, compression.getLevel(), dictionary) : null;
+
+            if (deflated == null || deflated.length >= content.length) {
+                // raw frame when the content is too small or does not compress
+                frame.writeByte(RawFrame);
+                frame.writeInt(content.length);
+                frame.write(content);
+            } else {
+                frame.writeByte(dictionary == null ? DeflatedFrame : DictionaryFrame);
+                frame.writeInt(deflated.length);
+                if (dictionary != null) {
+                    frame.writeInt(dictionaryId(dictionary));
+                }
+                frame.write(deflated);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * frame the content while the stream is consumed: a content smaller than a chunk (or than the threshold) is framed as a byte array,
+     * a larger one is deflated into a single frame, or split into raw frames of a chunk when the compression is disabled.
+     * As a frame starts with the length of its payload, the deflated payload is kept in memory until the content is consumed
+     */
+    private InputStream compress(File file, InputStream content, boolean withMagic) {
+        Compression compression = getCompression(file);
+        byte[] buffer = new byte[Math.max(ChunkSize, compression.getThreshold())];
+        int length = IFileRepository.readChunk(content, buffer);
+        if (length < buffer.length) {
+            return new ByteArrayInputStream(compress(file, Arrays.copyOf(buffer, length), withMagic));
+        }
+        InputStream frames = compression.isEnabled() ?
+                deflate(buffer, content, compression.getLevel()) :
+                new SequenceInputStream(new RawFrames(buffer, length, content));
+        return withMagic ? new SequenceInputStream(new ByteArrayInputStream(Magic), frames) : frames;
+    }
+
+    private static InputStream deflate(byte[] head, InputStream content, int level) {
+        FrameOutputStream frame = new FrameOutputStream(DeflatedFrame);
+        Deflater deflater = new Deflater(level, true);
+        try (DeflaterOutputStream output = new DeflaterOutputStream(frame, deflater, ChunkSize)) {
+            output.write(head);
+            IOUtils.copyLarge(content, output, new byte[ChunkSize]);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            deflater.end();
+        }
+        return frame.toInputStream();
+    }
+
+    private static byte[] frameHeader(byte type, int length) {
+        return ByteBuffer.allocate(1 + Integer.BYTES).put(type).putInt(length).array();
+    }
+
+    private static byte[] deflate(byte[] content, int level, byte[] dictionary) {
+        Deflater deflater = new Deflater(level, true);
+        try {
+            if (dictionary != null) {
+                deflater.setDictionary(dictionary);
+            }
+            deflater.setInput(content);
+            deflater.finish();
+            ByteArrayOutputStream output = new ByteArrayOutputStream(content.length / 2 + 16);
+            byte[] buffer = new byte[Math.min(ChunkSize, Math.max(64, content.length))];
+            while (!deflater.finished()) {
+                int count = deflater.deflate(buffer);
+                output.write(buffer, 0, count);
+                if (output.size() >= content.length) {
+                    // not compressible, stored raw
+                    return null;
+                }
+            }
+            return output.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * @return the first bytes of the file, empty if the file does not exist yet
+     */
+    private byte[] readHead(File file) {
+        try {
+            return fileRepository.read(file, 0, Magic.length);
+        } catch (UncheckedIOException e) {
+            // any other failure must not be taken for a missing file, as the file would then be replaced by the appended content
+            if (e.getCause() instanceof NoSuchFileException) {
+                return new byte[0];
+            }
+            throw e;
+        }
+    }
+
+    private void registerDictionary(Compression compression) {
+        if (compression.getDictionary() != null) {
+            dictionaries.put(dictionaryId(compression.getDictionary()), compression.getDictionary());
+        }
+    }
+
+    private static int dictionaryId(byte[] dictionary) {
+        Adler32 adler32 = new Adler32();
+        adler32.update(dictionary);
+        return (int) adler32.getValue();
+    }
+
+    private void onFound(String application, String perimeter, Folder folder) {
+        if (folder != null) {
+            folderPerimeters.putIfAbsent(folder, new Key(application, perimeter));
+        }
+    }
+    //endregion
+
+    @Data
+    @RequiredArgsConstructor
+    private static class Key {
+        private final String application;
+        private final String perimeter;
+    }
+
+    /**
+     * frame whose payload is written before its length is known, the header is completed once the payload is written
+     */
+    private static final class FrameOutputStream extends ByteArrayOutputStream {
+
+        private static final int HeaderLength = 1 + Integer.BYTES;
+
+        FrameOutputStream(byte type) {
+            super(ChunkSize);
+            write(frameHeader(type, 0), 0, HeaderLength);
+        }
+
+        InputStream toInputStream() {
+            System.arraycopy(frameHeader(buf[0], count - HeaderLength), 0, buf, 0, HeaderLength);
+            return new ByteArrayInputStream(buf, 0, count);
+        }
+    }
+
+    /**
+     * raw frames of a chunk of the content, each chunk is read when the previous frame has been consumed
+     */
+    private static final class RawFrames implements Enumeration<InputStream> {
+
+        private final InputStream content;
+
+        private byte[] chunk;
+
+        private int length;
+
+        RawFrames(byte[] chunk, int length, InputStream content) {
+            this.chunk = chunk;
+            this.length = length;
+            this.content = content;
+        }
+
+        @Override
+        public boolean hasMoreElements() {
+            return length > 0;
+        }
+
+        @Override
+        public InputStream nextElement() {
+            if (length <= 0) {
+                throw new NoSuchElementException();
+            }
+            InputStream frame = new SequenceInputStream(new ByteArrayInputStream(frameHeader(RawFrame, length)), new ByteArrayInputStream(chunk, 0, length));
+            chunk = new byte[chunk.length];
+            length = IFileRepository.readChunk(content, chunk);
+            return frame;
+        }
+    }
+
+    /**
+     * stream of the content of a compressed file, which reads and inflates the frames one after the other
+     */
+    private final class FramedInputStream extends InputStream {
+
+        private final DataInputStream source;
+
+        private InputStream frame = new ByteArrayInputStream(new byte[0]);
+
+        private InputStream payload = frame;
+
+        private Inflater inflater;
+
+        FramedInputStream(InputStream source) {
+            this.source = new DataInputStream(source);
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            int count;
+            while ((count = frame.read(bytes, offset, length)) < 0) {
+                if (!nextFrame()) {
+                    return -1;
+                }
+            }
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            endInflater();
+            source.close();
+        }
+
+        private boolean nextFrame() throws IOException {
+            endInflater();
+            // the inflater may not have consumed the whole payload of the previous frame
+            IOUtils.skip(payload, Long.MAX_VALUE);
+            int type = source.read();
+            if (type < 0) {
+                return false;
+            }
+            int length = source.readInt();
+            byte[] dictionary = null;
+            if (type == DictionaryFrame) {
+                int dictionaryId = source.readInt();
+                dictionary = dictionaries.get(dictionaryId);
+                if (dictionary == null) {
+                    throw new IOException(String.format("Unknown compression dictionary %08x", dictionaryId));
+                }
+            } else if (type != RawFrame && type != DeflatedFrame) {
+                throw new IOException("Unknown compression frame " + type);
+            }
+
+            BoundedInputStream boundedPayload = new BoundedInputStream(source, length);
+            boundedPayload.setPropagateClose(false);
+            payload = boundedPayload;
+            if (type == RawFrame) {
+                frame = payload;
+            } else {
+                inflater = new Inflater(true);
+                if (dictionary != null) {
+                    inflater.setDictionary(dictionary);
+                }
+                frame = new InflaterInputStream(payload, inflater);
+            }
+            return true;
+        }
+
+        private void endInflater() {
+            if (inflater != null) {
+                inflater.end();
+                inflater = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.ote.file.adapter;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.util.zip.Deflater;
+
+/**
+ * Settings of the compression of the contents stored by a CompressingFileRepository
+ */
+@Getter
+@Builder
+public final class Compression {
+
+    public static final Compression None = builder().enabled(false).build();
+
+    @Builder.Default
+    private final boolean enabled = true;
+
+    /**
+     * level of the Deflater, from 1 (fastest) to 9 (smallest)
+     */
+    @Builder.Default
+    private final int level = Deflater.DEFAULT_COMPRESSION;
+
+    /**
+     * contents smaller than the threshold are stored raw, as their compression would not pay off
+     */
+    @Builder.Default
+    private final int threshold = 512;
+
+    /**
+     * preset dictionary of the Deflater, made of strings which are frequent in the contents (for instance the keys of JSON files)
+     * null means no dictionary
+     */
+    private final byte[] dictionary;
+
+    /**
+     * the dictionary is only used for contents up to this size, larger contents find their own repetitions
+     */
+    @Builder.Default
+    private final int dictionaryMaximumSize = 64 * 1024;
+}
@@ -0,0 +1,77 @@
+package com.ote.file.adapter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Split contents into chunks whose boundaries depend on the content (gear rolling hash), so that inserting or removing bytes
+ * only changes the chunks around the modification, the other ones remaining identical
+ * A boundary is set when the low bits of the hash are all 0 (one chance over averageSize), between minimumSize and maximumSize bytes.
+ */
+final class ContentDefinedChunker {
+
+    private static final long[] Gear = new long[256];
+
+    static {
+        // the table must never change, otherwise the chunks of existing contents would not be found anymore
+        Random random = new Random(0x5EED_C0DEL);
+        for (int i = 0; i < Gear.length; i++) {
+            Gear[i] = random.nextLong();
+        }
+    }
+
+    private final int minimumSize;
+
+    private final int maximumSize;
+
+    private final long mask;
+
+    ContentDefinedChunker(int minimumSize, int averageSize, int maximumSize) {
+        if (minimumSize <= 0 || averageSize < minimumSize || maximumSize < averageSize) {
+            throw new IllegalArgumentException(String.format("Invalid chunk sizes: minimum %d, average %d, maximum %d", minimumSize, averageSize, maximumSize));
+        }
+        this.minimumSize = minimumSize;
+        this.maximumSize = maximumSize;
+        // the highest bits of the gear hash are the ones depending on the most bytes
+        int bits = 31 - Integer.numberOfLeadingZeros(averageSize);
+        this.mask = bits == 0 ? 0 : -1L << (64 - bits);
+    }
+
+    /**
+     * @return the lengths of the successive chunks of the content
+     */
+    List<Integer> split(byte[] content, int offset, int length) {
+        List<Integer> lengths = new ArrayList<>();
+        int start = offset;
+        int end = offset + length;
+        while (start < end) {
+            int chunkLength = nextBoundary(content, start, end) - start;
+            lengths.add(chunkLength);
+            start += chunkLength;
+        }
+        return lengths;
+    }
+
+    int getMaximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * @return the end of the chunk which starts at start, the boundary is the one of the whole content as long as
+     * end - start is at least maximumSize or end is the end of the content
+     */
+    int nextBoundary(byte[] content, int start, int end) {
+        int limit = (int) Math.min(end, (long) start + maximumSize);
+        int position = (int) Math.min(limit, (long) start + minimumSize);
+        long hash = 0;
+        while (position < limit) {
+            hash = (hash << 1) + Gear[content[position] & 0xFF];
+            position++;
+            if ((hash & mask) == 0) {
+                return position;
+            }
+        }
+        return limit;
+    }
+}
@@ -0,0 +1,459 @@
+package com.ote.file.adapter;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.ote.file.api.model.File;
+import com.ote.file.api.model.Folder;
+import com.ote.file.api.model.Page;
+import com.ote.file.spi.IFileRepository;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import org.apache.commons.io.IOUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Implementation of IFileRepository which stores each distinct chunk of content once
+ * Contents are split into content-defined chunks, each chunk is stored in the chunk directory under its SHA-256,
+ * and the file itself is a manifest listing its chunks, which is stored by the manifest repository (hence the folders
+ * and the listings are the ones of the manifest repository).
+ * Saving a content whose chunks are already stored only costs the hash of the chunks and the write of the manifest,
+ * appending a content only appends the entries of its chunks to the manifest, and streams are chunked in a single pass.
+ * Chunks are checked against their hash when they are read.
+ * <p>
+ * Chunks are never deleted, even when no manifest references them anymore.
+ */
+public class DeduplicatingFileRepository implements IFileRepository {
+
+    public static final int DefaultMinimumChunkSize = 2 * 1024;
+    public static final int DefaultAverageChunkSize = 8 * 1024;
+    public static final int DefaultMaximumChunkSize = 64 * 1024;
+
+    private static final String ManifestHeader = "dedup-manifest 1";
+
+    /**
+     * number of hashes of the chunks known to be stored which are kept in memory, the others are checked against the chunk directory
+     */
+    private static final long StoredChunksCacheSize = 100_000;
+
+    private static final Pattern Hash = Pattern.compile("[0-9a-f]{64}");
+
+    private static final Pattern Length = Pattern.compile("[0-9]{1,9}");
+
+    private final IFileRepository manifestRepository;
+
+    private final Path chunkDirectory;
+
+    private final ContentDefinedChunker chunker;
+
+    private final Cache<String, Boolean> storedChunks = Caffeine.newBuilder().maximumSize(StoredChunksCacheSize).build();
+
+    private final AtomicLong writtenBytes = new AtomicLong();
+
+    private final AtomicLong storedBytes = new AtomicLong();
+
+    private final AtomicLong chunkCount = new AtomicLong();
+
+    private final AtomicLong duplicateChunkCount = new AtomicLong();
+
+    public DeduplicatingFileRepository(IFileRepository manifestRepository, Path chunkDirectory) {
+        this(manifestRepository, chunkDirectory, DefaultMinimumChunkSize, DefaultAverageChunkSize, DefaultMaximumChunkSize);
+    }
+
+    public DeduplicatingFileRepository(IFileRepository manifestRepository, Path chunkDirectory,
+                                       int minimumChunkSize, int averageChunkSize, int maximumChunkSize) {
+        this.manifestRepository = manifestRepository;
+        this.chunkDirectory = chunkDirectory;
+        this.chunker = new ContentDefinedChunker(minimumChunkSize, averageChunkSize, maximumChunkSize);
+    }
+
+    @Override
+    public Set<Folder> getFolders(String application, String perimeter) {
+        return manifestRepository.getFolders(application, perimeter);
+    }
+
+    @Override
+    public Set<File> getFiles(String application, String perimeter, Folder folder) {
+        return manifestRepository.getFiles(application, perimeter, folder);
+    }
+
+    @Override
+    public Stream<Folder> streamFolders(String application, String perimeter) {
+        return manifestRepository.streamFolders(application, perimeter);
+    }
+
+    @Override
+    public Stream<File> streamFiles(String application, String perimeter, Folder folder) {
+        return manifestRepository.streamFiles(application, perimeter, folder);
+    }
+
+    @Override
+    public Page<File> getFiles(String application, String perimeter, Folder folder, int pageSize, String continuationToken) {
+        return manifestRepository.getFiles(application, perimeter, folder, pageSize, continuationToken);
+    }
+
+    @Override
+    public boolean isFound(String application, String perimeter, Folder folder) {
+        return manifestRepository.isFound(application, perimeter, folder);
+    }
+
+    @Override
+    public boolean isFound(String application, String perimeter, File file) {
+        return manifestRepository.isFound(application, perimeter, file);
+    }
+
+    @Override
+    public void write(File file, byte[] content) {
+        manifestRepository.write(file, toBytes(storeChunks(content, 0, content.length)));
+    }
+
+    /**
+     * the stream is split into chunks in a single pass, then the manifest is written once
+     */
+    @Override
+    public void write(File file, InputStream content) {
+        manifestRepository.write(file, toBytes(storeChunks(content)));
+    }
+
+    /**
+     * the appended content is split into its own chunks, whose entries are appended to the manifest: the current content
+     * of the file is neither read nor rewritten (the last chunk of the file is not split again with the appended content,
+     * which only costs the deduplication of the chunks around the boundary)
+     */
+    @Override
+    public void append(File file, byte[] content) {
+        appendManifest(file, storeChunks(content, 0, content.length));
+    }
+
+    @Override
+    public void append(File file, InputStream content) {
+        appendManifest(file, storeChunks(content));
+    }
+
+    /**
+     * chunks are stored straight away and are immutable, hence the staging is atomic if the one of the manifests is
+     */
+    @Override
+    public boolean isStagingAtomic() {
+        return manifestRepository.isStagingAtomic();
+    }
+
+    /**
+     * chunks are stored straight away, only the manifest is staged
+     */
+    @Override
+    public StagedFile stage(File file, byte[] content) {
+        return manifestRepository.stage(file, toBytes(storeChunks(content, 0, content.length)));
+    }
+
+    @Override
+    public StagedFile stage(File file, InputStream content) {
+        return manifestRepository.stage(file, toBytes(storeChunks(content)));
+    }
+
+    /**
+     * the staged manifest is the current one followed by the chunks of the appended content, the current content is not read
+     */
+    @Override
+    public StagedFile stageAppend(File file, InputStream content) {
+        List<Chunk> chunks = isManifestFound(file) ? readManifest(file) : new ArrayList<>();
+        chunks.addAll(storeChunks(content));
+        return manifestRepository.stage(file, toBytes(chunks));
+    }
+
+    @Override
+    public byte[] read(File file) {
+        List<Chunk> chunks = readManifest(file);
+        long size = chunks.stream().mapToLong(Chunk::getLength).sum();
+        if (size > Integer.MAX_VALUE) {
+            throw new UncheckedIOException(new IOException(String.format("File '%s' is too large to be read in memory (%d bytes)", file.getPath(), size)));
+        }
+        byte[] content = new byte[(int) size];
+        int position = 0;
+        for (Chunk chunk : chunks) {
+            byte[] chunkContent = readChunk(chunk);
+            System.arraycopy(chunkContent, 0, content, position, chunkContent.length);
+            position += chunkContent.length;
+        }
+        return content;
+    }
+
+    /**
+     * only the chunks overlapping the range are read, the content is sized from the manifest
+     */
+    @Override
+    public byte[] read(File file, long offset, int length) {
+        List<Chunk> chunks = readManifest(file);
+        long size = chunks.stream().mapToLong(Chunk::getLength).sum();
+        length = (int) Math.max(0, Math.min(length, size - offset));
+        byte[] content = new byte[length];
+        int count = 0;
+        long chunkOffset = 0;
+        for (Chunk chunk : chunks) {
+            long chunkEnd = chunkOffset + chunk.getLength();
+            if (chunkEnd > offset + count && count < length) {
+                byte[] chunkContent = readChunk(chunk);
+                int from = (int) (offset + count - chunkOffset);
+                int copied = Math.min(length - count, chunkContent.length - from);
+                System.arraycopy(chunkContent, from, content, count, copied);
+                count += copied;
+            }
+            chunkOffset = chunkEnd;
+        }
+        return count < length ? Arrays.copyOf(content, count) : content;
+    }
+
+    /**
+     * chunks are read one after the other while the stream is consumed
+     */
+    @Override
+    public InputStream openInputStream(File file) {
+        Iterator<Chunk> chunks = readManifest(file).iterator();
+        return new SequenceInputStream(new Enumeration<InputStream>() {
+            @Override
+            public boolean hasMoreElements() {
+                return chunks.hasNext();
+            }
+
+            @Override
+            public InputStream nextElement() {
+                return new ByteArrayInputStream(readChunk(chunks.next()));
+            }
+        });
+    }
+
+    public Statistics getStatistics() {
+        return new Statistics(writtenBytes.get(), storedBytes.get(), chunkCount.get(), duplicateChunkCount.get());
+    }
+
+    //region Chunks
+    private List<Chunk> storeChunks(byte[] content, int offset, int length) {
+        MessageDigest digest = newDigest();
+        List<Chunk> chunks = new ArrayList<>();
+        int position = offset;
+        for (int chunkLength : chunker.split(content, offset, length)) {
+            digest.update(content, position, chunkLength);
+            Chunk chunk = new Chunk(toHex(digest.digest()), chunkLength);
+            storeChunk(chunk, content, position);
+            chunks.add(chunk);
+            position += chunkLength;
+        }
+        writtenBytes.addAndGet(length);
+        return chunks;
+    }
+
+    /**
+     * split the stream in a single pass: the buffer always holds a whole chunk (or the end of the stream) from the start
+     * of the next one, hence the chunks are the same as the ones of the whole content
+     */
+    private List<Chunk> storeChunks(InputStream content) {
+        int maximumSize = chunker.getMaximumSize();
+        byte[] buffer = new byte[2 * maximumSize];
+        MessageDigest digest = newDigest();
+        List<Chunk> chunks = new ArrayList<>();
+        long length = 0;
+        int start = 0;
+        int end = 0;
+        boolean ended = false;
+        try {
+            while (true) {
+                if (!ended && end - start < maximumSize) {
+                    System.arraycopy(buffer, start, buffer, 0, end - start);
+                    end -= start;
+                    start = 0;
+                    int count = IOUtils.read(content, buffer, end, buffer.length - end);
+                    ended = count < buffer.length - end;
+                    end += count;
+                }
+                if (start == end) {
+                    break;
+                }
+                int chunkLength = chunker.nextBoundary(buffer, start, end) - start;
+                digest.update(buffer, start, chunkLength);
+                Chunk chunk = new Chunk(toHex(digest.digest()), chunkLength);
+                storeChunk(chunk, buffer, start);
+                chunks.add(chunk);
+                start += chunkLength;
+                length += chunkLength;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        writtenBytes.addAndGet(length);
+        return chunks;
+    }
+
+    private void storeChunk(Chunk chunk, byte[] content, int offset) {
+        chunkCount.incrementAndGet();
+        Path path = getPath(chunk);
+        if (storedChunks.getIfPresent(chunk.getHash()) != null || Files.exists(path)) {
+            storedChunks.put(chunk.getHash(), Boolean.TRUE);
+            duplicateChunkCount.incrementAndGet();
+            return;
+        }
+        try {
+            // the chunk is written aside then renamed, so that a chunk which is found is always complete
+            Files.createDirectories(path.getParent());
+            Path temporary = Files.createTempFile(path.getParent(), chunk.getHash(), ".tmp");
+            try {
+                Files.write(temporary, Arrays.copyOfRange(content, offset, offset + chunk.getLength()));
+                Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        storedChunks.put(chunk.getHash(), Boolean.TRUE);
+        storedBytes.addAndGet(chunk.getLength());
+    }
+
+    /**
+     * the content of the chunk is checked against its hash, so that a corrupted chunk is never returned
+     */
+    private byte[] readChunk(Chunk chunk) {
+        Path path = getPath(chunk);
+        try {
+            byte[] content = Files.readAllBytes(path);
+            if (content.length != chunk.getLength() || !toHex(newDigest().digest(content)).equals(chunk.getHash())) {
+                throw new IOException(String.format("Chunk '%s' is corrupted", path));
+            }
+            return content;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Path getPath(Chunk chunk) {
+        // chunks are spread among 256 sub-directories, so that no directory gets too large
+        return chunkDirectory.resolve(chunk.getHash().substring(0, 2)).resolve(chunk.getHash());
+    }
+    //endregion
+
+    //region Manifests
+    private List<Chunk> readManifest(File file) {
+        String[] lines = new String(manifestRepository.read(file), StandardCharsets.UTF_8).split("\n");
+        if (!lines[0].equals(ManifestHeader)) {
+            throw new UncheckedIOException(new IOException(String.format("File '%s' is not a deduplication manifest", file.getPath())));
+        }
+        List<Chunk> chunks = new ArrayList<>(lines.length - 1);
+        for (int i = 1; i < lines.length; i++) {
+            // the hash is resolved as a path of the chunk directory, hence it must not be anything else than a hash
+            String[] fields = lines[i].split(" ");
+            if (fields.length != 2 || !Hash.matcher(fields[0]).matches() || !Length.matcher(fields[1]).matches()) {
+                throw new UncheckedIOException(new IOException(String.format("Line %d of the deduplication manifest '%s' is corrupted", i + 1, file.getPath())));
+            }
+            chunks.add(new Chunk(fields[0], Integer.parseInt(fields[1])));
+        }
+        return chunks;
+    }
+
+    /**
+     * @return false if the manifest does not exist, the manifest is checked otherwise
+     */
+    private boolean isManifestFound(File file) {
+        byte[] header;
+        try {
+            header = manifestRepository.read(file, 0, ManifestHeader.length());
+        } catch (UncheckedIOException e) {
+            if (e.getCause() instanceof NoSuchFileException) {
+                return false;
+            }
+            throw e;
+        }
+        if (!ManifestHeader.equals(new String(header, StandardCharsets.UTF_8))) {
+            throw new UncheckedIOException(new IOException(String.format("File '%s' is not a deduplication manifest", file.getPath())));
+        }
+        return true;
+    }
+
+    /**
+     * append the entries of the chunks to the manifest, which is created if the file does not exist
+     */
+    private void appendManifest(File file, List<Chunk> chunks) {
+        if (!isManifestFound(file)) {
+            manifestRepository.write(file, toBytes(chunks));
+        } else if (!chunks.isEmpty()) {
+            manifestRepository.append(file, toEntries(chunks).getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static byte[] toBytes(List<Chunk> chunks) {
+        return (ManifestHeader + toEntries(chunks)).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * each entry starts with a line separator, so that entries can be appended after the header or the previous entries
+     */
+    private static String toEntries(List<Chunk> chunks) {
+        StringBuilder entries = new StringBuilder();
+        chunks.forEach(chunk -> entries.append('\n').append(chunk.getHash()).append(' ').append(chunk.getLength()));
+        return entries.toString();
+    }
+    //endregion
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    @Data
+    @RequiredArgsConstructor
+    private static class Chunk {
+        private final String hash;
+        private final int length;
+    }
+
+    /**
+     * Snapshot of the bytes written through the repository and of the bytes actually stored
+     */
+    @Data
+    @RequiredArgsConstructor
+    public static class Statistics {
+
+        private final long writtenBytes;
+        private final long storedBytes;
+        private final long chunkCount;
+        private final long duplicateChunkCount;
+
+        /**
+         * bytes which have not been stored as their chunks were already stored
+         */
+        public long getSavedBytes() {
+            return writtenBytes - storedBytes;
+        }
+
+        /**
+         * ratio of the written bytes to the stored bytes, 2 meaning that half of the written bytes were duplicates
+         */
+        public double getDeduplicationRatio() {
+            return storedBytes == 0 ? (writtenBytes == 0 ? 1.0 : Double.POSITIVE_INFINITY) : (double) writtenBytes / storedBytes;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.ote.file.adapter;
+
+import com.ote.file.spi.ILock;
+import com.ote.file.spi.ILockRepository;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.ote.file.spi.IUserRightRepository.Privilege;
+
+/**
+ * Implementation of ILockRepository which keeps the lock table in memory
+ * Each file has a writer and a count of holds per reader, so that a reader only releases its own hold
+ * The table is a hash map, hence the lookup of a file does not depend on the number of locked files
+ */
+@NoArgsConstructor
+public class InMemoryLockRepository implements ILockRepository {
+
+    private final Map<KeyFileLock, Holders> fileLocks = new ConcurrentHashMap<>();
+
+    @Getter
+    private final ILock lock = new Lock();
+
+    @Override
+    public Optional<FileLock> getFileLock(KeyFileLock key) {
+        Holders holders = fileLocks.get(key);
+        return holders == null ? Optional.empty() : Optional.ofNullable(holders.getCurrent());
+    }
+
+    @Override
+    public void lockFile(FileLock fileLock) {
+        fileLocks.compute(fileLock.getKey(), (key, holders) -> (holders == null ? new Holders() : holders).hold(fileLock));
+    }
+
+    @Override
+    public void unlockFile(FileLock fileLock) {
+        fileLocks.computeIfPresent(fileLock.getKey(), (key, holders) -> holders.release(fileLock));
+    }
+
+    /**
+     * @return the number of READ holds on the file
+     */
+    public int getReaderCount(KeyFileLock key) {
+        Holders holders = fileLocks.get(key);
+        return holders == null ? 0 : holders.getReaderCount();
+    }
+
+    /**
+     * holders of a file, which are only modified while the entry of the file is locked by the map
+     */
+    private static final class Holders {
+
+        private final Map<FileLock, Integer> readers = new LinkedHashMap<>();
+
+        private FileLock writer;
+
+        @Getter
+        private volatile FileLock current;
+
+        @Getter
+        private volatile int readerCount;
+
+        Holders hold(FileLock fileLock) {
+            if (fileLock.getPrivilege() == Privilege.WRITE) {
+                writer = fileLock;
+            } else {
+                readers.merge(fileLock, 1, Integer::sum);
+                readerCount++;
+            }
+            current = writer != null ? writer : firstReader();
+            return this;
+        }
+
+        Holders release(FileLock fileLock) {
+            if (fileLock.getPrivilege() == Privilege.WRITE) {
+                if (fileLock.equals(writer)) {
+                    writer = null;
+                }
+            } else {
+                Integer count = readers.get(fileLock);
+                if (count != null) {
+                    if (count == 1) {
+                        readers.remove(fileLock);
+                    } else {
+                        readers.put(fileLock, count - 1);
+                    }
+                    readerCount--;
+                }
+            }
+            if (writer == null && readers.isEmpty()) {
+                return null;
+            }
+            current = writer != null ? writer : firstReader();
+            return this;
+        }
+
+        private FileLock firstReader() {
+            Iterator<FileLock> iterator = readers.keySet().iterator();
+            return iterator.hasNext() ? iterator.next() : null;
+        }
+    }
+
+    private static final class Lock implements ILock {
+
+        private final ReentrantLock lock = new ReentrantLock();
+
+        @Override
+        public boolean tryLock(long timeout, TimeUnit timeUnit) {
+            try {
+                return lock.tryLock(timeout, timeUnit);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+
+        @Override
+        public void unlock() {
+            lock.unlock();
+        }
+    }
+}
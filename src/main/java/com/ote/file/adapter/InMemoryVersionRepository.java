@@ -0,0 +1,28 @@
+package com.ote.file.adapter;
+
+import com.ote.file.spi.IVersionRepository;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.ote.file.spi.ILockRepository.KeyFileLock;
+
+/**
+ * Implementation of IVersionRepository which keeps the versions in memory
+ */
+@NoArgsConstructor
+public class InMemoryVersionRepository implements IVersionRepository {
+
+    private final Map<KeyFileLock, Long> versions = new ConcurrentHashMap<>();
+
+    @Override
+    public long getVersion(KeyFileLock key) {
+        return versions.getOrDefault(key, 0L);
+    }
+
+    @Override
+    public long incrementVersion(KeyFileLock key) {
+        return versions.merge(key, 1L, Long::sum);
+    }
+}
@@ -0,0 +1,553 @@
+package com.ote.file.adapter;
+
+import com.ote.file.api.model.File;
+import com.ote.file.api.model.Folder;
+import com.ote.file.api.model.Page;
+import com.ote.file.spi.BufferPool;
+import com.ote.file.spi.IFileRepository;
+import lombok.Data;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Implementation of IFileRepository which stores files on the local file system with NIO channels
+ * Folders are registered for each application and perimeter, the path of the file is resolved as is
+ * <p>
+ * Files which are larger than the mapping threshold are memory-mapped when they are streamed.
+ * Listings of folders are cached and refreshed when the last modified time of the directory changes
+ * (files created through this repository are added to the cached listing, which is kept if it was up to date before the creation).
+ * Staged files are written to a hidden temporary file of the same directory, which is atomically renamed on commit.
+ * Contents are transferred to and from the channels through pooled direct buffers, chunk by chunk.
+ */
+public class LocalFileRepository implements IFileRepository {
+
+    public static final long DefaultMappingThreshold = 1024 * 1024;
+
+    private static final long MappingWindow = 64 * 1024 * 1024;
+
+    private static final String StagingSuffix = ".staged";
+
+    /**
+     * name of the staging files built by stage, so that a file whose name merely ends with the suffix is still listed
+     */
+    private static final Pattern StagingName = Pattern.compile("\\..+\\.[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}" + Pattern.quote(StagingSuffix));
+
+    /**
+     * files of a listing belong to the same folder
+     */
+    private static final Comparator<File> ByName = Comparator.comparing(File::getName);
+
+    private final Map<Key, Set<Folder>> foldersMap = new ConcurrentHashMap<>();
+
+    private final Map<Folder, Listing> listings = new ConcurrentHashMap<>();
+
+    @Getter
+    private final long mappingThreshold;
+
+    private final BufferPool bufferPool;
+
+    public LocalFileRepository() {
+        this(DefaultMappingThreshold);
+    }
+
+    public LocalFileRepository(long mappingThreshold) {
+        this(mappingThreshold, BufferPool.Shared);
+    }
+
+    public LocalFileRepository(long mappingThreshold, BufferPool bufferPool) {
+        this.mappingThreshold = mappingThreshold;
+        this.bufferPool = bufferPool;
+    }
+
+    @Override
+    public Set<Folder> getFolders(String application, String perimeter) {
+        Set<Folder> folders = foldersMap.get(new Key(application, perimeter));
+        return folders == null ? Collections.emptySet() : Collections.unmodifiableSet(folders);
+    }
+
+    @Override
+    public Set<File> getFiles(String application, String perimeter, Folder folder) {
+        return Collections.unmodifiableSet(getListing(folder).getFiles());
+    }
+
+    /**
+     * the cached listing is sorted by name, hence the page is read from the continuation token and stops after pageSize + 1 files
+     */
+    @Override
+    public Page<File> getFiles(String application, String perimeter, Folder folder, int pageSize, String continuationToken) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("The size of a page must be positive: " + pageSize);
+        }
+
+        NavigableSet<File> files = getListing(folder).getFiles();
+        if (continuationToken != null) {
+            files = files.tailSet(new File(folder, continuationToken), false);
+        }
+        List<File> items = new ArrayList<>(pageSize + 1);
+        Iterator<File> iterator = files.iterator();
+        while (items.size() <= pageSize && iterator.hasNext()) {
+            items.add(iterator.next());
+        }
+
+        if (items.size() <= pageSize) {
+            return new Page<>(items, null);
+        }
+        items.remove(pageSize);
+        return new Page<>(items, items.get(pageSize - 1).getName());
+    }
+
+    /**
+     * iterate over the directory without caching its listing, so that huge folders are never loaded at once
+     */
+    @Override
+    public Stream<File> streamFiles(String application, String perimeter, Folder folder) {
+        Path directory = getPath(folder);
+        if (getLastModifiedTime(directory) == null) {
+            return Stream.empty();
+        }
+        try {
+            return toFiles(folder, Files.list(directory));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public boolean isFound(String application, String perimeter, File file) {
+        return getListing(file.getFolder()).getFiles().contains(file);
+    }
+
+    @Override
+    public void write(File file, byte[] content) {
+        Listing listing = getCurrentListing(file.getFolder());
+        try (FileChannel channel = FileChannel.open(getPath(file), CREATE, TRUNCATE_EXISTING, WRITE)) {
+            writeFully(channel, content);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        onCreated(file, listing);
+    }
+
+    @Override
+    public void append(File file, byte[] content) {
+        Listing listing = getCurrentListing(file.getFolder());
+        try (FileChannel channel = FileChannel.open(getPath(file), CREATE, APPEND, WRITE)) {
+            writeFully(channel, content);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        onCreated(file, listing);
+    }
+
+    @Override
+    public void write(File file, InputStream content) {
+        Listing listing = getCurrentListing(file.getFolder());
+        try (FileChannel channel = FileChannel.open(getPath(file), CREATE, TRUNCATE_EXISTING, WRITE)) {
+            transfer(Channels.newChannel(content), channel);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        onCreated(file, listing);
+    }
+
+    @Override
+    public void append(File file, InputStream content) {
+        Listing listing = getCurrentListing(file.getFolder());
+        try (FileChannel channel = FileChannel.open(getPath(file), CREATE, APPEND, WRITE)) {
+            transfer(Channels.newChannel(content), channel);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        onCreated(file, listing);
+    }
+
+    /**
+     * staged files are renamed over the target on commit
+     */
+    @Override
+    public boolean isStagingAtomic() {
+        return true;
+    }
+
+    @Override
+    public StagedFile stage(File file, byte[] content) {
+        return stage(file, channel -> writeFully(channel, content));
+    }
+
+    @Override
+    public StagedFile stage(File file, InputStream content) {
+        return stage(file, channel -> transfer(Channels.newChannel(content), channel));
+    }
+
+    private StagedFile stage(File file, ChannelWriter writer) {
+        Path target = getPath(file);
+        Path staging = target.resolveSibling("." + target.getFileName() + "." + UUID.randomUUID() + StagingSuffix);
+        try (FileChannel channel = FileChannel.open(staging, CREATE_NEW, WRITE)) {
+            writer.write(channel);
+        } catch (IOException e) {
+            deleteQuietly(staging);
+            throw new UncheckedIOException(e);
+        }
+        return new StagedFile() {
+            @Override
+            public void commit() {
+                Listing listing = getCurrentListing(file.getFolder());
+                try {
+                    Files.move(staging, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                onCreated(file, listing);
+            }
+
+            @Override
+            public void discard() {
+                deleteQuietly(staging);
+            }
+        };
+    }
+
+    /**
+     * the content is copied into the array anyway, hence the file is read through the channel whatever its size
+     */
+    @Override
+    public byte[] read(File file) {
+        try (FileChannel channel = FileChannel.open(getPath(file), READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException(String.format("File '%s' is too large to be read in memory (%d bytes)", file.getPath(), size));
+            }
+            byte[] content = new byte[(int) size];
+            int length = 0;
+            try (BufferPool.Buffer buffer = bufferPool.acquire(ChunkSize)) {
+                ByteBuffer byteBuffer = buffer.get();
+                int count;
+                // read until the content is full or the end of the file is reached
+                while (length < content.length && (count = channel.read(byteBuffer)) >= 0) {
+                    byteBuffer.flip();
+                    count = Math.min(count, content.length - length);
+                    byteBuffer.get(content, length, count);
+                    length += count;
+                    byteBuffer.clear();
+                }
+            }
+            return length < content.length ? Arrays.copyOf(content, length) : content;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * read the range with positional reads, without reading the beginning of the file
+     */
+    @Override
+    public byte[] read(File file, long offset, int length) {
+        try (FileChannel channel = FileChannel.open(getPath(file), READ)) {
+            byte[] content = new byte[(int) Math.max(0, Math.min(length, channel.size() - offset))];
+            int count = 0;
+            try (BufferPool.Buffer buffer = bufferPool.acquire(ChunkSize)) {
+                ByteBuffer byteBuffer = buffer.get();
+                int read;
+                while (count < content.length) {
+                    byteBuffer.clear().limit(Math.min(byteBuffer.capacity(), content.length - count));
+                    if ((read = channel.read(byteBuffer, offset + count)) < 0) {
+                        break;
+                    }
+                    byteBuffer.flip();
+                    byteBuffer.get(content, count, read);
+                    count += read;
+                }
+            }
+            return count < content.length ? Arrays.copyOf(content, count) : content;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public InputStream openInputStream(File file) {
+        try {
+            FileChannel channel = FileChannel.open(getPath(file), READ);
+            if (channel.size() >= mappingThreshold) {
+                return new MappedInputStream(channel);
+            }
+            return Channels.newInputStream(channel);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void addFolder(String application, String perimeter, Folder folder) {
+        foldersMap.computeIfAbsent(new Key(application, perimeter), k -> ConcurrentHashMap.newKeySet()).add(folder.intern());
+    }
+
+    public void removeFolder(String application, String perimeter, Folder folder) {
+        foldersMap.computeIfPresent(new Key(application, perimeter), (k, folders) -> {
+            folders.remove(folder);
+            return folders.isEmpty() ? null : folders;
+        });
+        listings.remove(folder);
+    }
+
+    //region Listings
+    private Listing getListing(Folder folder) {
+        Path directory = getPath(folder);
+        FileTime lastModified = getLastModifiedTime(directory);
+        if (lastModified == null) {
+            listings.remove(folder);
+            return Listing.Empty;
+        }
+        Listing listing = listings.get(folder);
+        if (listing != null && listing.getLastModified().equals(lastModified)) {
+            return listing;
+        }
+        // the directory is listed outside of the map, the listing is only stored if no other one has been meanwhile
+        Listing listed = list(folder, directory, lastModified);
+        if (listing == null) {
+            listings.putIfAbsent(folder, listed);
+        } else {
+            listings.replace(folder, listing, listed);
+        }
+        return listed;
+    }
+
+    /**
+     * @return the cached listing of the folder if it is up to date, null otherwise
+     */
+    private Listing getCurrentListing(Folder folder) {
+        Listing listing = listings.get(folder);
+        return listing != null && listing.getLastModified().equals(getLastModifiedTime(getPath(folder))) ? listing : null;
+    }
+
+    /**
+     * the creation of the file changes the last modified time of the directory: the listing which was up to date before
+     * is kept with the new time and the file, so that the directory is not listed again
+     */
+    private void onCreated(File file, Listing listing) {
+        if (listing == null) {
+            return;
+        }
+        FileTime lastModified = getLastModifiedTime(getPath(file.getFolder()));
+        if (lastModified != null) {
+            listing.getFiles().add(file);
+            listings.replace(file.getFolder(), listing, new Listing(lastModified, listing.getFiles()));
+        }
+    }
+
+    /**
+     * files of the cached listings are interned, so that listing a changed directory again reuses the instances of its files
+     * which are still referenced (files which are only streamed are not, in order not to fill the pool)
+     */
+    private static Listing list(Folder folder, Path directory, FileTime lastModified) {
+        try (Stream<File> listedFiles = toFiles(folder.intern(), Files.list(directory))) {
+            NavigableSet<File> files = listedFiles.map(File::intern).collect(Collectors.toCollection(() -> new ConcurrentSkipListSet<>(ByName)));
+            return new Listing(lastModified, files);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Stream<File> toFiles(Folder folder, Stream<Path> paths) {
+        return paths.filter(Files::isRegularFile).
+                filter(p -> !StagingName.matcher(p.getFileName().toString()).matches()).
+                map(p -> new File(folder, p.getFileName().toString()));
+    }
+
+    private static FileTime getLastModifiedTime(Path directory) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(directory, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            return attributes.isDirectory() ? attributes.lastModifiedTime() : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+    //endregion
+
+    /**
+     * the file must be a direct child of its folder, so that a name such as ../x does not resolve outside of the registered folders
+     */
+    private static Path getPath(File file) {
+        Path folder = getPath(file.getFolder()).normalize();
+        Path path = Paths.get(file.getPath()).normalize();
+        Path parent = path.getParent() == null ? Paths.get("") : path.getParent();
+        if (!parent.equals(folder) || path.getFileName() == null || !path.getFileName().toString().equals(file.getName())) {
+            throw new IllegalArgumentException(String.format("Invalid name of file '%s', it must not leave its folder", file.getPath()));
+        }
+        return path;
+    }
+
+    private static Path getPath(Folder folder) {
+        return Paths.get(folder.getPath());
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            // the staged file is left behind, it is ignored by the listings
+        }
+    }
+
+    private void writeFully(FileChannel channel, byte[] content) throws IOException {
+        try (BufferPool.Buffer buffer = bufferPool.acquire(ChunkSize)) {
+            ByteBuffer byteBuffer = buffer.get();
+            int offset = 0;
+            while (offset < content.length) {
+                int length = Math.min(byteBuffer.capacity(), content.length - offset);
+                byteBuffer.clear();
+                byteBuffer.put(content, offset, length).flip();
+                writeFully(channel, byteBuffer);
+                offset += length;
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private void transfer(ReadableByteChannel source, FileChannel target) throws IOException {
+        try (BufferPool.Buffer buffer = bufferPool.acquire(ChunkSize)) {
+            ByteBuffer byteBuffer = buffer.get();
+            while (source.read(byteBuffer) >= 0) {
+                byteBuffer.flip();
+                writeFully(target, byteBuffer);
+                byteBuffer.clear();
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface ChannelWriter {
+        void write(FileChannel channel) throws IOException;
+    }
+
+    @Data
+    @RequiredArgsConstructor
+    private static class Key {
+        private final String application;
+        private final String perimeter;
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    private static class Listing {
+
+        private static final Listing Empty = new Listing(FileTime.fromMillis(0), Collections.emptyNavigableSet());
+
+        private final FileTime lastModified;
+        private final NavigableSet<File> files;
+    }
+
+    /**
+     * stream which maps the file window by window, so that files larger than 2GB can be read
+     */
+    private static final class MappedInputStream extends InputStream {
+
+        private final FileChannel channel;
+
+        private final long size;
+
+        private long position;
+
+        private MappedByteBuffer window;
+
+        MappedInputStream(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.size = channel.size();
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!nextWindow()) {
+                return -1;
+            }
+            return window.get() & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            if (!nextWindow()) {
+                return -1;
+            }
+            int count = Math.min(length, window.remaining());
+            window.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = Math.max(0, Math.min(n, available()));
+            if (window != null) {
+                position = position - window.remaining() + skipped;
+                window = null;
+            } else {
+                position += skipped;
+            }
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            long remaining = size - position + (window == null ? 0 : window.remaining());
+            return (int) Math.min(Integer.MAX_VALUE, remaining);
+        }
+
+        @Override
+        public void close() throws IOException {
+            window = null;
+            channel.close();
+        }
+
+        private boolean nextWindow() throws IOException {
+            if (window != null && window.hasRemaining()) {
+                return true;
+            }
+            if (position >= size) {
+                return false;
+            }
+            long length = Math.min(MappingWindow, size - position);
+            window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+            position += length;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.ote.file.api;
+
+import com.ote.file.api.model.File;
+import com.ote.file.api.model.Folder;
+import com.ote.file.api.model.Page;
+import com.ote.file.api.model.Versioned;
+import io.vavr.control.Try;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Asynchronous variant of IFileService: each call is run on an executor and the caller thread is never blocked,
+ * neither by the lock acquisition nor by the repositories.
+ * The exceptions of IFileService (UserNotFoundException, LockException...) are reported as exceptional completions of the future
+ */
+public interface IAsyncFileService {
+
+    CompletableFuture<Set<Folder>> getFolders(String user, String application, String perimeter);
+
+    CompletableFuture<Set<File>> getFiles(String user, String application, String perimeter, Folder folder);
+
+    CompletableFuture<Set<File>> getFiles(String user, String application, String perimeter);
+
+    CompletableFuture<Page<File>> getFiles(String user, String application, String perimeter, Folder folder, int pageSize, String continuationToken);
+
+    CompletableFuture<byte[]> read(String user, String application, String perimeter, File file);
+
+    CompletableFuture<byte[]> read(String user, String application, String perimeter, File file, long offset, int length);
+
+    CompletableFuture<Versioned<byte[]>> readVersioned(String user, String application, String perimeter, File file);
+
+    CompletableFuture<Map<File, Try<byte[]>>> readAll(String user, String application, String perimeter, Collection<File> files);
+
+    CompletableFuture<Void> save(String user, String application, String perimeter, File file, byte[] content, boolean replaceIfFound);
+
+    CompletableFuture<Long> save(String user, String application, String perimeter, File file, byte[] content, long expectedVersion);
+
+    CompletableFuture<Void> saveAll(String user, String application, String perimeter, Map<File, byte[]> contents, boolean replaceIfFound);
+
+    CompletableFuture<Void> append(String user, String application, String perimeter, File file, byte[] content, boolean createIfNotFound);
+}
@@ -3,10 +3,17 @@ package com.ote.file.api;
 import com.ote.file.api.exception.*;
 import com.ote.file.api.model.File;
 import com.ote.file.api.model.Folder;
+import com.ote.file.api.model.Page;
+import com.ote.file.api.model.Versioned;
+import io.vavr.control.Try;
 
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.Map;
 import java.util.Set;
+import java.util.stream.Stream;
 
-public interface IFileService {
+public interface IFileService extends AutoCloseable {
 
     Set<Folder> getFolders(String user, String application, String perimeter)
             throws UserNotFoundException, ApplicationNotFoundException, PerimeterNotFoundException, UnauthorizedException;
@@ -17,12 +24,108 @@ public interface IFileService {
     Set<File> getFiles(String user, String application, String perimeter)
             throws UserNotFoundException, ApplicationNotFoundException, PerimeterNotFoundException, UnauthorizedException;
 
+    /**
+     * iterate lazily over the folders, the returned stream must be closed
+     */
+    Stream<Folder> streamFolders(String user, String application, String perimeter)
+            throws UserNotFoundException, ApplicationNotFoundException, PerimeterNotFoundException, UnauthorizedException;
+
+    /**
+     * iterate lazily over the files of the folder, the returned stream must be closed
+     */
+    Stream<File> streamFiles(String user, String application, String perimeter, Folder folder)
+            throws UserNotFoundException, ApplicationNotFoundException, PerimeterNotFoundException, FolderNotFoundException, UnauthorizedException;
+
+    /**
+     * iterate lazily over the files of all the folders, one folder after the other, the returned stream must be closed
+     */
+    Stream<File> streamFiles(String user, String application, String perimeter)
+            throws UserNotFoundException, ApplicationNotFoundException, PerimeterNotFoundException, UnauthorizedException;
+
+    /**
+     * get a page of the files of the folder sorted by name
+     *
+     * @param continuationToken token of the previous page, null to get the first page
+     */
+    Page<File> getFiles(String user, String application, String perimeter, Folder folder, int pageSize, String continuationToken)
+            throws UserNotFoundException, ApplicationNotFoundException, PerimeterNotFoundException, FolderNotFoundException, UnauthorizedException;
+
     byte[] read(String user, String application, String perimeter, File file)
             throws UserNotFoundException, ApplicationNotFoundException, PerimeterNotFoundException, FolderNotFoundException, FileNotFoundException, UnauthorizedException, LockException;
 
+    /**
+     * read the file with its current version, which is given back to save(..., expectedVersion)
+     */
+    Versioned<byte[]> readVersioned(String user, String application, String perimeter, File file)
+            throws UserNotFoundException, ApplicationNotFoundException, PerimeterNotFoundException, FolderNotFoundException, FileNotFoundException, UnauthorizedException, LockException;
+
+    /**
+     * read at most length bytes of the file from the given offset, less bytes are returned when the end of the file is reached
+     */
+    byte[] read(String user, String application, String perimeter, File file, long offset, int length)
+            throws UserNotFoundException, ApplicationNotFoundException, PerimeterNotFoundException, FolderNotFoundException, FileNotFoundException, UnauthorizedException, LockException;
+
+    /**
+     * read several files of the same perimeter: the user is checked once, then all the files are locked and read in parallel
+     * the result of each file is either its content or the error which prevented from reading it
+     * (FolderNotFoundException, FileNotFoundException, LockException or a repository error)
+     */
+    Map<File, Try<byte[]>> readAll(String user, String application, String perimeter, Collection<File> files)
+            throws UserNotFoundException, ApplicationNotFoundException, PerimeterNotFoundException, UnauthorizedException;
+
+    /**
+     * read the file as a stream, the lock on the file is held until the returned stream is closed
+     */
+    InputStream readAsStream(String user, String application, String perimeter, File file)
+            throws UserNotFoundException, ApplicationNotFoundException, PerimeterNotFoundException, FolderNotFoundException, FileNotFoundException, UnauthorizedException, LockException;
+
     void save(String user, String application, String perimeter, File file, byte[] content, boolean replaceIfFound)
             throws UserNotFoundException, ApplicationNotFoundException, PerimeterNotFoundException, FolderNotFoundException, FileFoundException, UnauthorizedException, LockException;
 
+    /**
+     * save the content of the stream, which is consumed by chunks but not closed
+     */
+    void save(String user, String application, String perimeter, File file, InputStream content, boolean replaceIfFound)
+            throws UserNotFoundException, ApplicationNotFoundException, PerimeterNotFoundException, FolderNotFoundException, FileFoundException, UnauthorizedException, LockException;
+
+    /**
+     * save the file optimistically: the content is staged without locking the file, then the file is only locked
+     * while its version is compared with the expected one and the staged content is committed
+     * (the expected version of a file which has never been written through the service is 0, hence a file which exists
+     * but has not been written through the service, for instance before it started, is overwritten by an expected version of 0
+     * like readVersioned gives it)
+     *
+     * @return the new version of the file
+     */
+    long save(String user, String application, String perimeter, File file, byte[] content, long expectedVersion)
+            throws UserNotFoundException, ApplicationNotFoundException, PerimeterNotFoundException, FolderNotFoundException, UnauthorizedException, LockException,
+            VersionConflictException;
+
+    /**
+     * save several files of the same perimeter together: the user, application, perimeter and right are checked once,
+     * all the files are locked (in the order of their path), staged, then committed one after the other.
+     * Nothing is written if one of the files can not be validated, locked or staged.
+     * The commits are not atomic as a whole: when one of them fails, the remaining staged files are discarded and,
+     * if some files have already been committed, a PartialCommitException lists the committed and uncommitted files.
+     * With a repository which does not override IFileRepository.stage, staging keeps the contents in memory and
+     * the commit is a plain write of each file, hence the batch only amounts to sequential writes under the locks
+     */
+    void saveAll(String user, String application, String perimeter, Map<File, byte[]> contents, boolean replaceIfFound)
+            throws UserNotFoundException, ApplicationNotFoundException, PerimeterNotFoundException, FolderNotFoundException, FileFoundException, UnauthorizedException, LockException;
+
     void append(String user, String application, String perimeter, File file, byte[] content, boolean createIfNotFound)
             throws UserNotFoundException, ApplicationNotFoundException, PerimeterNotFoundException, FolderNotFoundException, FileNotFoundException, UnauthorizedException, LockException;
+
+    /**
+     * append the content of the stream, which is consumed by chunks but not closed
+     */
+    void append(String user, String application, String perimeter, File file, InputStream content, boolean createIfNotFound)
+            throws UserNotFoundException, ApplicationNotFoundException, PerimeterNotFoundException, FolderNotFoundException, FileNotFoundException, UnauthorizedException, LockException;
+
+    /**
+     * flush the appends which are buffered by the service, the next appends are written straight away
+     */
+    @Override
+    default void close() {
+    }
 }
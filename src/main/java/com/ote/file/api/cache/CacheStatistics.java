@@ -0,0 +1,30 @@
+package com.ote.file.api.cache;
+
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Snapshot of the statistics of a cache
+ */
+@Data
+@RequiredArgsConstructor
+public class CacheStatistics {
+
+    private final long hitCount;
+    private final long missCount;
+    private final long evictionCount;
+
+    /**
+     * average time spent to load a missing entry from the underlying repository, in nanoseconds
+     */
+    private final double averageLoadPenalty;
+
+    public long getRequestCount() {
+        return hitCount + missCount;
+    }
+
+    public double getHitRate() {
+        long requestCount = getRequestCount();
+        return requestCount == 0 ? 1.0 : (double) hitCount / requestCount;
+    }
+}
@@ -0,0 +1,21 @@
+package com.ote.file.api.cache;
+
+import com.ote.file.spi.IApplicationRepository;
+
+/**
+ * Cache of the existence of the applications and their perimeters, which is placed in front of an IApplicationRepository
+ * Found and not found entries are cached with their own time to live
+ */
+public interface IApplicationCache extends IApplicationRepository {
+
+    /**
+     * invalidate the application and all its perimeters
+     */
+    void invalidate(String application);
+
+    void invalidate(String application, String perimeter);
+
+    void invalidateAll();
+
+    CacheStatistics getStatistics();
+}
@@ -0,0 +1,24 @@
+package com.ote.file.api.cache;
+
+import com.ote.file.spi.ILockRepository.KeyFileLock;
+
+/**
+ * Cache of the content of the files read through the file service, bounded by the total size of the cached contents
+ * The file service reads cached contents without locking the file and invalidates them when the file is saved or appended,
+ * contents changed outside the service have to be invalidated (or expire after their time to live)
+ */
+public interface IContentCache {
+
+    /**
+     * @return the cached content of the file, null if it is not cached
+     */
+    byte[] getIfPresent(KeyFileLock key);
+
+    void put(KeyFileLock key, byte[] content);
+
+    void invalidate(KeyFileLock key);
+
+    void invalidateAll();
+
+    CacheStatistics getStatistics();
+}
@@ -0,0 +1,16 @@
+package com.ote.file.api.cache;
+
+import com.ote.file.spi.IUserRepository;
+
+/**
+ * Cache of the existence of the users, which is placed in front of an IUserRepository
+ * Found and not found users are cached with their own time to live
+ */
+public interface IUserCache extends IUserRepository {
+
+    void invalidate(String user);
+
+    void invalidateAll();
+
+    CacheStatistics getStatistics();
+}
@@ -0,0 +1,18 @@
+package com.ote.file.api.cache;
+
+import com.ote.file.spi.IUserRightRepository;
+
+/**
+ * Cache of the privileges of the users, which is placed in front of an IUserRightRepository
+ * Entries expire after their time to live, they have to be invalidated as soon as rights change
+ */
+public interface IUserRightCache extends IUserRightRepository {
+
+    void invalidate(String user, String application, String perimeter);
+
+    void invalidate(String user);
+
+    void invalidateAll();
+
+    CacheStatistics getStatistics();
+}
@@ -0,0 +1,26 @@
+package com.ote.file.api.exception;
+
+import com.ote.file.api.model.File;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * Thrown by saveAll when the commit of one of the staged files fails once others have been committed:
+ * the committed files keep their new content, the other staged files are discarded
+ */
+@Getter
+public class PartialCommitException extends RuntimeException {
+
+    private static final String MessageTemplate = "Batch for application '%s' and perimeter '%s' is partially committed: %s committed, %s not committed";
+
+    private final List<File> committedFiles;
+
+    private final List<File> uncommittedFiles;
+
+    public PartialCommitException(String application, String perimeter, List<File> committedFiles, List<File> uncommittedFiles, Throwable cause) {
+        super(String.format(MessageTemplate, application, perimeter, committedFiles, uncommittedFiles), cause);
+        this.committedFiles = committedFiles;
+        this.uncommittedFiles = uncommittedFiles;
+    }
+}
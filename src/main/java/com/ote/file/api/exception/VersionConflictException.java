@@ -0,0 +1,12 @@
+package com.ote.file.api.exception;
+
+import com.ote.file.api.model.File;
+
+public class VersionConflictException extends Exception {
+
+    private static final String MessageTemplate = "File '%s' for application '%s' and perimeter '%s' is at version %d whereas version %d was expected";
+
+    public VersionConflictException(String application, String perimeter, File file, long expectedVersion, long actualVersion) {
+        super(String.format(MessageTemplate, file.getPath(), application, perimeter, actualVersion, expectedVersion));
+    }
+}
@@ -1,21 +1,64 @@
 package com.ote.file.api.model;
 
-import lombok.Data;
-import lombok.RequiredArgsConstructor;
+import lombok.Getter;
 
-@Data
-@RequiredArgsConstructor
-public class File {
+import java.util.Objects;
 
+/**
+ * Immutable path of a file in a folder
+ * The path string and the hash code are computed once, so that files are cheap to use as keys of maps and sets.
+ */
+public final class File {
+
+    private static final Interner<File> Interner = new Interner<>();
+
+    @Getter
     private final Folder folder;
+
+    @Getter
     private final String name;
 
-    @Override
-    public String toString() {
-        return getPath();
+    private final String path;
+
+    private final int hash;
+
+    public File(Folder folder, String name) {
+        this.folder = folder;
+        this.name = name;
+        this.path = folder == null ? name : folder.getPath() + "/" + name;
+        this.hash = 31 * Objects.hashCode(folder) + Objects.hashCode(name);
     }
 
     public String getPath() {
-        return folder.getPath() + "/" + name;
+        return path;
+    }
+
+    /**
+     * @return the canonical instance of this file, so that equal files can share the same instance
+     */
+    public File intern() {
+        return Interner.intern(this);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof File)) {
+            return false;
+        }
+        File other = (File) o;
+        return hash == other.hash && Objects.equals(name, other.name) && Objects.equals(folder, other.folder);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return path;
     }
-}
\ No newline at end of file
+}
@@ -1,35 +1,104 @@
 package com.ote.file.api.model;
 
-import lombok.Data;
-
 import java.util.Arrays;
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
-@Data
-public class Folder {
+/**
+ * Immutable path of a folder
+ * The path string and the hash code are computed once, so that folders are cheap to use as keys of maps and sets.
+ * Two folders are equal when they have the same path.
+ */
+public final class Folder {
+
+    private static final Pattern Separator = Pattern.compile("\\\\|\\/");
+
+    private static final Interner<Folder> Interner = new Interner<>();
+
+    private final String[] segments;
 
-    private final String[] path;
+    private final String path;
+
+    private final int hash;
+
+    private Folder parent;
 
     public Folder(String... path) {
-        this.path = path;
+        this(path.clone(), null);
     }
 
     public Folder(String path) {
-        this(Pattern.compile("\\\\|\\/").split(path));
+        this(Separator.split(path), null);
     }
 
     public Folder(Folder parent, String... path) {
-        this(Stream.concat(Arrays.stream(parent.path), Arrays.stream(path)).toArray(String[]::new));
+        this(concat(parent.segments, path), path.length == 1 ? parent : null);
+    }
+
+    private Folder(String[] segments, Folder parent) {
+        this.segments = segments;
+        this.path = String.join("/", segments);
+        this.hash = path.hashCode();
+        this.parent = parent;
+    }
+
+    /**
+     * @return the parent folder, null when this folder has a single segment
+     */
+    public Folder getParent() {
+        if (parent == null && segments.length > 1) {
+            // racy but safe: the parent is immutable and equal whichever thread computes it
+            parent = new Folder(Arrays.copyOf(segments, segments.length - 1), null);
+        }
+        return parent;
+    }
+
+    /**
+     * @return the last segment of the path
+     */
+    public String getName() {
+        return segments.length == 0 ? "" : segments[segments.length - 1];
+    }
+
+    public String[] getSegments() {
+        return segments.clone();
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * @return the canonical instance of this folder, so that equal folders can share the same instance
+     */
+    public Folder intern() {
+        return Interner.intern(this);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Folder)) {
+            return false;
+        }
+        Folder other = (Folder) o;
+        return hash == other.hash && path.equals(other.path);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
     }
 
     @Override
     public String toString() {
-        return getPath();
+        return path;
     }
 
-    public String getPath() {
-        return Stream.of(path).collect(Collectors.joining("/"));
+    private static String[] concat(String[] first, String[] second) {
+        String[] result = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
     }
 }
@@ -0,0 +1,23 @@
+package com.ote.file.api.model;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Page of a listing, sorted by name
+ * The continuation token is given back to get the next page, it is null when this page is the last one
+ */
+@Getter
+@RequiredArgsConstructor
+public final class Page<T> {
+
+    private final List<T> items;
+
+    private final String continuationToken;
+
+    public boolean isLast() {
+        return continuationToken == null;
+    }
+}
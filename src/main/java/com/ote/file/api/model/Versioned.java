@@ -0,0 +1,16 @@
+package com.ote.file.api.model;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Content of a file with the version it was read at, which is given back to save it optimistically
+ */
+@Getter
+@RequiredArgsConstructor
+public final class Versioned<T> {
+
+    private final T content;
+
+    private final long version;
+}
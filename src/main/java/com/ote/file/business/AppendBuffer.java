@@ -0,0 +1,376 @@
+package com.ote.file.business;
+
+import com.ote.file.api.exception.FileNotFoundException;
+import com.ote.file.api.exception.LockException;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.ote.file.business.FileServiceOptions.AppendDurability;
+import static com.ote.file.spi.ILockRepository.KeyFileLock;
+
+/**
+ * Write-behind buffer of the appends, which coalesces the appends of each file in memory and flushes them as a single append
+ * <p>
+ * With ACK_ON_FLUSH, the appends are group committed: an append which finds no flush in progress for its file flushes straight away,
+ * the appends arriving during a flush are written together by the next one. An append returns once the flush which contains
+ * its content has succeeded, and fails with it.
+ * <p>
+ * With ACK_ON_BUFFER, an append returns once its content is buffered, the buffer of the file being flushed once it reaches
+ * the maximum size or once its oldest content has been buffered for the maximum delay. A content which could not be flushed is kept
+ * in front of the buffer and flushed again with the next ones, at most maximumRetries times in the background: the buffer is then
+ * failed and the next append (or close) flushes it before buffering its content, so that the failure is reported to the producers
+ * instead of growing the buffer. An append also flushes the buffer first when its content would overflow it.
+ * <p>
+ * Buffered contents are flushed when the buffer is closed and when the JVM shuts down. A single shutdown hook is shared by the buffers,
+ * which keeps them until they are closed: a buffer (hence the file service which owns it) must be closed once it is not used anymore.
+ */
+final class AppendBuffer implements AutoCloseable {
+
+    private final int maximumBytes;
+
+    private final long maximumDelay;
+
+    private final TimeUnit timeUnit;
+
+    private final int maximumRetries;
+
+    private final AppendDurability durability;
+
+    private final Executor executor;
+
+    private final Map<KeyFileLock, FileBuffer> fileBuffers = new ConcurrentHashMap<>();
+
+    private volatile boolean closed;
+
+    AppendBuffer(FileServiceOptions options) {
+        this.maximumBytes = options.getAppendBufferMaximumBytes();
+        this.maximumDelay = options.getAppendBufferMaximumDelay();
+        this.timeUnit = options.getAppendBufferTimeUnit();
+        this.maximumRetries = options.getAppendBufferMaximumRetries();
+        this.durability = options.getAppendDurability();
+        this.executor = options.getExecutor();
+        if (maximumBytes > 0) {
+            ShutdownHook.register(this);
+        }
+    }
+
+    /**
+     * appends are written straight away when the buffer is disabled (maximum size of 0) or closed
+     */
+    boolean isEnabled() {
+        return maximumBytes > 0 && !closed;
+    }
+
+    /**
+     * @param createIfNotFound whether the content may create the file, the file is only created by a flush whose appends all allow it
+     */
+    void append(String user, KeyFileLock key, byte[] content, boolean createIfNotFound, Appender appender) throws LockException, FileNotFoundException {
+        FileBuffer fileBuffer;
+        CompletableFuture<Void> flushed;
+        do {
+            fileBuffer = fileBuffers.computeIfAbsent(key, k -> new FileBuffer(k, appender));
+            if (durability == AppendDurability.ACK_ON_BUFFER && (fileBuffer.isFailed() || fileBuffer.wouldOverflow(content.length))) {
+                // the buffer could not be flushed in the background, the content is not acknowledged until it has been
+                fileBuffer.flush();
+            }
+            flushed = fileBuffer.add(user, content, createIfNotFound);
+        } while (flushed == null);
+
+        if (durability == AppendDurability.ACK_ON_FLUSH) {
+            fileBuffer.flushUnlessDone(flushed);
+            await(flushed);
+        } else if (closed) {
+            fileBuffer.flush();
+        }
+    }
+
+    /**
+     * flush the buffered appends of the file, so that a write which does not go through the buffer is not overwritten by them
+     * buffered appends which may not create the file fail when it has been removed, this failure does not belong to the caller
+     */
+    void flush(KeyFileLock key) throws LockException {
+        FileBuffer fileBuffer = fileBuffers.get(key);
+        if (fileBuffer != null) {
+            try {
+                fileBuffer.flush();
+            } catch (FileNotFoundException e) {
+                throw new IllegalStateException("Buffered appends could not be flushed", e);
+            }
+        }
+    }
+
+    /**
+     * flush the buffered appends of every file, the next appends are written straight away
+     */
+    @Override
+    public void close() {
+        closed = true;
+        if (maximumBytes > 0) {
+            ShutdownHook.unregister(this);
+        }
+        RuntimeException failure = flushAllQuietly();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private RuntimeException flushAllQuietly() {
+        RuntimeException failure = null;
+        for (FileBuffer fileBuffer : fileBuffers.values()) {
+            try {
+                fileBuffer.flush();
+            } catch (LockException | FileNotFoundException | RuntimeException e) {
+                if (failure == null) {
+                    failure = new IllegalStateException("Buffered appends could not be flushed", e);
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        return failure;
+    }
+
+    private static void await(CompletableFuture<Void> flushed) throws LockException, FileNotFoundException {
+        try {
+            flushed.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof LockException) {
+                throw (LockException) cause;
+            }
+            if (cause instanceof FileNotFoundException) {
+                throw (FileNotFoundException) cause;
+            }
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : e;
+        }
+    }
+
+    /**
+     * write the coalesced content of a file, on behalf of the user of its first buffered append
+     */
+    @FunctionalInterface
+    interface Appender {
+        void append(String user, KeyFileLock key, byte[] content, boolean createIfNotFound) throws LockException, FileNotFoundException;
+    }
+
+    /**
+     * shutdown hook which flushes the buffers which are not closed, it is added once the first buffer is registered
+     */
+    private static final class ShutdownHook {
+
+        private static final Set<AppendBuffer> Buffers = ConcurrentHashMap.newKeySet();
+
+        static {
+            Runtime.getRuntime().addShutdownHook(new Thread(ShutdownHook::flushAll, "file-service-append-buffer"));
+        }
+
+        static void register(AppendBuffer appendBuffer) {
+            Buffers.add(appendBuffer);
+        }
+
+        static void unregister(AppendBuffer appendBuffer) {
+            Buffers.remove(appendBuffer);
+        }
+
+        private static void flushAll() {
+            Buffers.forEach(AppendBuffer::flushAllQuietly);
+        }
+    }
+
+    /**
+     * buffered content of a file, flushes are serialized so that the contents are appended in their order of arrival
+     */
+    private final class FileBuffer {
+
+        private final KeyFileLock key;
+
+        private final Appender appender;
+
+        private final ReentrantLock lock = new ReentrantLock();
+
+        private final ReentrantLock flushLock = new ReentrantLock();
+
+        private ByteArrayOutputStream content = new ByteArrayOutputStream();
+
+        private String user;
+
+        private boolean createIfNotFound = true;
+
+        private CompletableFuture<Void> flushed = new CompletableFuture<>();
+
+        private boolean scheduled;
+
+        private boolean removed;
+
+        private int failedFlushes;
+
+        FileBuffer(KeyFileLock key, Appender appender) {
+            this.key = key;
+            this.appender = appender;
+        }
+
+        boolean wouldOverflow(int length) {
+            lock.lock();
+            try {
+                return content.size() > 0 && content.size() + length > maximumBytes;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * the background retries of the flush are exhausted
+         */
+        boolean isFailed() {
+            lock.lock();
+            try {
+                return failedFlushes > maximumRetries;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * @return the future completed by the flush of the content, null if the buffer has been removed meanwhile
+         */
+        CompletableFuture<Void> add(String user, byte[] content, boolean createIfNotFound) {
+            lock.lock();
+            try {
+                if (removed) {
+                    return null;
+                }
+                if (this.user == null) {
+                    this.user = user;
+                }
+                this.createIfNotFound &= createIfNotFound;
+                this.content.write(content, 0, content.length);
+                if (durability == AppendDurability.ACK_ON_BUFFER) {
+                    if (this.content.size() >= maximumBytes) {
+                        executor.execute(this::flushQuietly);
+                    } else {
+                        schedule();
+                    }
+                }
+                return flushed;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * group commit: the content of the given flush is written, unless a flush of another append has already written it
+         * the failure of the flush is given by the future
+         */
+        void flushUnlessDone(CompletableFuture<Void> flushed) {
+            flushLock.lock();
+            try {
+                if (!flushed.isDone()) {
+                    flushQuietly();
+                }
+            } finally {
+                flushLock.unlock();
+            }
+        }
+
+        void flush() throws LockException, FileNotFoundException {
+            flushLock.lock();
+            try {
+                String user;
+                byte[] bytes;
+                boolean createIfNotFound;
+                CompletableFuture<Void> flushed;
+                lock.lock();
+                try {
+                    if (content.size() == 0) {
+                        return;
+                    }
+                    user = this.user;
+                    bytes = content.toByteArray();
+                    createIfNotFound = this.createIfNotFound;
+                    flushed = this.flushed;
+                    this.content = new ByteArrayOutputStream();
+                    this.user = null;
+                    this.createIfNotFound = true;
+                    this.flushed = new CompletableFuture<>();
+                    this.scheduled = false;
+                } finally {
+                    lock.unlock();
+                }
+
+                try {
+                    appender.append(user, key, bytes, createIfNotFound);
+                } catch (LockException | FileNotFoundException | RuntimeException e) {
+                    onFailure(user, bytes, createIfNotFound, flushed, e);
+                    throw e;
+                }
+                flushed.complete(null);
+                onSuccess();
+            } finally {
+                flushLock.unlock();
+            }
+        }
+
+        private void flushQuietly() {
+            try {
+                flush();
+            } catch (LockException | FileNotFoundException | RuntimeException e) {
+                // the failure is either given to the appends waiting for the flush, or the content is flushed again later
+            }
+        }
+
+        private void onFailure(String user, byte[] bytes, boolean createIfNotFound, CompletableFuture<Void> flushed, Exception failure) {
+            if (durability == AppendDurability.ACK_ON_FLUSH) {
+                flushed.completeExceptionally(failure);
+                return;
+            }
+            // acknowledged contents must not be lost, they are put back in front of the contents buffered meanwhile
+            lock.lock();
+            try {
+                ByteArrayOutputStream retried = new ByteArrayOutputStream(bytes.length + content.size());
+                retried.write(bytes, 0, bytes.length);
+                retried.write(content.toByteArray(), 0, content.size());
+                this.content = retried;
+                this.user = user;
+                this.createIfNotFound &= createIfNotFound;
+                // once the retries are exhausted, the buffer is only flushed again by the next append or close
+                if (++failedFlushes <= maximumRetries) {
+                    schedule();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * called with the lock held
+         */
+        private void schedule() {
+            if (!scheduled) {
+                scheduled = true;
+                CompletableFuture.delayedExecutor(maximumDelay, timeUnit, executor).execute(this::flushQuietly);
+            }
+        }
+
+        private void onSuccess() {
+            lock.lock();
+            try {
+                failedFlushes = 0;
+                if (content.size() == 0 && !scheduled) {
+                    // appends which find the buffer removed create a new one
+                    removed = true;
+                    fileBuffers.remove(key, this);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.ote.file.business;
+
+import com.ote.file.api.cache.CacheStatistics;
+import com.ote.file.api.cache.IApplicationCache;
+import com.ote.file.spi.IApplicationRepository;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+
+import java.util.concurrent.TimeUnit;
+
+final class ApplicationCache implements IApplicationCache {
+
+    private final ExistenceCache<String> applications;
+
+    private final ExistenceCache<Key> perimeters;
+
+    ApplicationCache(IApplicationRepository applicationRepository, long maximumSize, long positiveTimeToLive, long negativeTimeToLive, TimeUnit timeUnit) {
+        this.applications = new ExistenceCache<>(applicationRepository::isFound, maximumSize, positiveTimeToLive, negativeTimeToLive, timeUnit);
+        this.perimeters = new ExistenceCache<>(key -> applicationRepository.isFound(key.getApplication(), key.getPerimeter()),
+                maximumSize, positiveTimeToLive, negativeTimeToLive, timeUnit);
+    }
+
+    @Override
+    public boolean isFound(String application) {
+        return applications.isFound(application);
+    }
+
+    @Override
+    public boolean isFound(String application, String perimeter) {
+        return perimeters.isFound(new Key(application, perimeter));
+    }
+
+    @Override
+    public void invalidate(String application) {
+        applications.invalidate(application);
+        perimeters.invalidateIf(key -> key.getApplication().equals(application));
+    }
+
+    @Override
+    public void invalidate(String application, String perimeter) {
+        perimeters.invalidate(new Key(application, perimeter));
+    }
+
+    @Override
+    public void invalidateAll() {
+        applications.invalidateAll();
+        perimeters.invalidateAll();
+    }
+
+    @Override
+    public CacheStatistics getStatistics() {
+        return Caches.toStatistics(applications.stats().plus(perimeters.stats()));
+    }
+
+    @Data
+    @RequiredArgsConstructor
+    private static class Key {
+        private final String application;
+        private final String perimeter;
+    }
+}
@@ -0,0 +1,112 @@
+package com.ote.file.business;
+
+import com.ote.file.api.IAsyncFileService;
+import com.ote.file.api.IFileService;
+import com.ote.file.api.model.File;
+import com.ote.file.api.model.Folder;
+import com.ote.file.api.model.Page;
+import com.ote.file.api.model.Versioned;
+import io.vavr.CheckedFunction0;
+import io.vavr.CheckedRunnable;
+import io.vavr.control.Try;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+@RequiredArgsConstructor(access = AccessLevel.PACKAGE)
+final class AsyncFileService implements IAsyncFileService {
+
+    private final IFileService fileService;
+
+    private final Executor executor;
+
+    @Override
+    public CompletableFuture<Set<Folder>> getFolders(String user, String application, String perimeter) {
+        return supplyAsync(() -> fileService.getFolders(user, application, perimeter));
+    }
+
+    @Override
+    public CompletableFuture<Set<File>> getFiles(String user, String application, String perimeter, Folder folder) {
+        return supplyAsync(() -> fileService.getFiles(user, application, perimeter, folder));
+    }
+
+    @Override
+    public CompletableFuture<Set<File>> getFiles(String user, String application, String perimeter) {
+        return supplyAsync(() -> fileService.getFiles(user, application, perimeter));
+    }
+
+    @Override
+    public CompletableFuture<Page<File>> getFiles(String user, String application, String perimeter, Folder folder, int pageSize, String continuationToken) {
+        return supplyAsync(() -> fileService.getFiles(user, application, perimeter, folder, pageSize, continuationToken));
+    }
+
+    @Override
+    public CompletableFuture<byte[]> read(String user, String application, String perimeter, File file) {
+        return supplyAsync(() -> fileService.read(user, application, perimeter, file));
+    }
+
+    @Override
+    public CompletableFuture<byte[]> read(String user, String application, String perimeter, File file, long offset, int length) {
+        return supplyAsync(() -> fileService.read(user, application, perimeter, file, offset, length));
+    }
+
+    @Override
+    public CompletableFuture<Versioned<byte[]>> readVersioned(String user, String application, String perimeter, File file) {
+        return supplyAsync(() -> fileService.readVersioned(user, application, perimeter, file));
+    }
+
+    @Override
+    public CompletableFuture<Map<File, Try<byte[]>>> readAll(String user, String application, String perimeter, Collection<File> files) {
+        return supplyAsync(() -> fileService.readAll(user, application, perimeter, files));
+    }
+
+    @Override
+    public CompletableFuture<Void> save(String user, String application, String perimeter, File file, byte[] content, boolean replaceIfFound) {
+        return runAsync(() -> fileService.save(user, application, perimeter, file, content, replaceIfFound));
+    }
+
+    @Override
+    public CompletableFuture<Long> save(String user, String application, String perimeter, File file, byte[] content, long expectedVersion) {
+        return supplyAsync(() -> fileService.save(user, application, perimeter, file, content, expectedVersion));
+    }
+
+    @Override
+    public CompletableFuture<Void> saveAll(String user, String application, String perimeter, Map<File, byte[]> contents, boolean replaceIfFound) {
+        return runAsync(() -> fileService.saveAll(user, application, perimeter, contents, replaceIfFound));
+    }
+
+    @Override
+    public CompletableFuture<Void> append(String user, String application, String perimeter, File file, byte[] content, boolean createIfNotFound) {
+        return runAsync(() -> fileService.append(user, application, perimeter, file, content, createIfNotFound));
+    }
+
+    private CompletableFuture<Void> runAsync(CheckedRunnable runnable) {
+        return supplyAsync(() -> {
+            runnable.run();
+            return null;
+        });
+    }
+
+    private <T> CompletableFuture<T> supplyAsync(CheckedFunction0<T> supplier) {
+        // the checked exceptions of the file service complete the future as is (instead of being wrapped)
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    future.complete(supplier.apply());
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RuntimeException e) {
+            // the executor rejected the task
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+}
@@ -0,0 +1,14 @@
+package com.ote.file.business;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.ote.file.api.cache.CacheStatistics;
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+final class Caches {
+
+    static CacheStatistics toStatistics(CacheStats stats) {
+        return new CacheStatistics(stats.hitCount(), stats.missCount(), stats.evictionCount(), stats.averageLoadPenalty());
+    }
+}
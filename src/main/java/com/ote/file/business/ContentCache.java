@@ -0,0 +1,69 @@
+package com.ote.file.business;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.ote.file.api.cache.CacheStatistics;
+import com.ote.file.api.cache.IContentCache;
+import com.ote.file.spi.ILockRepository.KeyFileLock;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Contents are weighed by their size, the least valuable ones (W-TinyLFU) are evicted once the maximum size is exceeded
+ * Cached contents are copied in and out, so that callers can not modify them
+ * When the cache is disabled, nothing is cached
+ */
+final class ContentCache implements IContentCache {
+
+    static final ContentCache Disabled = new ContentCache();
+
+    private final Cache<KeyFileLock, byte[]> contents;
+
+    ContentCache(long maximumBytes, long timeToLive, TimeUnit timeUnit) {
+        this.contents = Caffeine.newBuilder().
+                maximumWeight(maximumBytes).
+                weigher((KeyFileLock key, byte[] content) -> content.length).
+                expireAfterWrite(timeToLive, timeUnit).
+                recordStats().
+                build();
+    }
+
+    private ContentCache() {
+        this.contents = null;
+    }
+
+    @Override
+    public byte[] getIfPresent(KeyFileLock key) {
+        if (contents == null) {
+            return null;
+        }
+        byte[] content = contents.getIfPresent(key);
+        return content == null ? null : content.clone();
+    }
+
+    @Override
+    public void put(KeyFileLock key, byte[] content) {
+        if (contents != null) {
+            contents.put(key, content.clone());
+        }
+    }
+
+    @Override
+    public void invalidate(KeyFileLock key) {
+        if (contents != null) {
+            contents.invalidate(key);
+        }
+    }
+
+    @Override
+    public void invalidateAll() {
+        if (contents != null) {
+            contents.invalidateAll();
+        }
+    }
+
+    @Override
+    public CacheStatistics getStatistics() {
+        return contents == null ? new CacheStatistics(0, 0, 0, 0) : Caches.toStatistics(contents.stats());
+    }
+}
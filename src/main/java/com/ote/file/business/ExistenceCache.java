@@ -0,0 +1,72 @@
+package com.ote.file.business;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * cache of the result of an existence check, found and not found keys expire after their own time to live
+ */
+final class ExistenceCache<K> {
+
+    private final LoadingCache<K, Boolean> cache;
+
+    ExistenceCache(Predicate<K> isFound, long maximumSize, long positiveTimeToLive, long negativeTimeToLive, TimeUnit timeUnit) {
+        this.cache = Caffeine.newBuilder().
+                maximumSize(maximumSize).
+                expireAfter(new ExistenceExpiry<K>(timeUnit.toNanos(positiveTimeToLive), timeUnit.toNanos(negativeTimeToLive))).
+                recordStats().
+                build(isFound::test);
+    }
+
+    boolean isFound(K key) {
+        return cache.get(key);
+    }
+
+    void invalidate(K key) {
+        cache.invalidate(key);
+    }
+
+    void invalidateIf(Predicate<K> predicate) {
+        cache.asMap().keySet().removeIf(predicate);
+    }
+
+    void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    CacheStats stats() {
+        return cache.stats();
+    }
+
+    private static final class ExistenceExpiry<K> implements Expiry<K, Boolean> {
+
+        private final long positiveTimeToLive;
+
+        private final long negativeTimeToLive;
+
+        ExistenceExpiry(long positiveTimeToLive, long negativeTimeToLive) {
+            this.positiveTimeToLive = positiveTimeToLive;
+            this.negativeTimeToLive = negativeTimeToLive;
+        }
+
+        @Override
+        public long expireAfterCreate(K key, Boolean found, long currentTime) {
+            return found ? positiveTimeToLive : negativeTimeToLive;
+        }
+
+        @Override
+        public long expireAfterUpdate(K key, Boolean found, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, found, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(K key, Boolean found, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
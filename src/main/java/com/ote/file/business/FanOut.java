@@ -0,0 +1,87 @@
+package com.ote.file.business;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+
+/**
+ * Run an action on each item of a collection with at most a given number of items processed at the same time
+ * The calling thread is one of the workers, so that the items are processed even if the executor is saturated
+ */
+final class FanOut {
+
+    private final Executor executor;
+
+    private final int parallelism;
+
+    FanOut(Executor executor, int parallelism) {
+        this.executor = executor;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    <T> void forEach(Collection<? extends T> items, Consumer<? super T> action) {
+        Queue<T> queue = new ConcurrentLinkedQueue<>(items);
+        Runnable worker = () -> {
+            T item;
+            while ((item = queue.poll()) != null) {
+                try {
+                    action.accept(item);
+                } catch (RuntimeException | Error e) {
+                    // the remaining items are skipped once an action has failed
+                    queue.clear();
+                    throw e;
+                }
+            }
+        };
+
+        int workers = Math.min(parallelism, items.size());
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[Math.max(0, workers - 1)];
+        for (int i = 0; i < futures.length; i++) {
+            try {
+                futures[i] = CompletableFuture.runAsync(worker, executor);
+            } catch (RejectedExecutionException e) {
+                // the workers already submitted are stopped and awaited, so that no action is still running when the rejection is thrown
+                queue.clear();
+                await(Arrays.copyOf(futures, i), e);
+                throw e;
+            }
+        }
+
+        // the other workers are awaited even if the calling one failed, so that no action is still running on return
+        Throwable failure = null;
+        try {
+            worker.run();
+        } catch (RuntimeException | Error e) {
+            failure = e;
+            throw e;
+        } finally {
+            await(futures, failure);
+        }
+    }
+
+    /**
+     * @param failure the failure being thrown by the caller, which suppresses the failures of the workers, null if none
+     */
+    private static void await(CompletableFuture<?>[] futures, Throwable failure) {
+        try {
+            CompletableFuture.allOf(futures).join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            if (failure != null) {
+                if (cause != failure) {
+                    failure.addSuppressed(cause);
+                }
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            } else {
+                throw cause instanceof RuntimeException ? (RuntimeException) cause : e;
+            }
+        }
+    }
+}
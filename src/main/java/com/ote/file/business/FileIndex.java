@@ -0,0 +1,129 @@
+package com.ote.file.business;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.ote.file.api.model.File;
+import com.ote.file.api.model.Folder;
+import com.ote.file.spi.IFileRepository;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Index of the folders and files of each perimeter, used to check their existence without listing them
+ * Folders of a perimeter are listed on first use, files of a folder are listed on first use of the folder,
+ * then files written through the service are added incrementally.
+ * Listings are complete, hence a lookup which misses is not checked against the repository, unless the service is about to act on it
+ * (create or overwrite the file, see isFoundBeforeWrite): a stale miss may only cause a spurious not found on reads.
+ * Listings expire after the time to live, so that folders and files created outside the service are found once they are listed again,
+ * and the least used listings are evicted beyond the maximum size.
+ * When the index is disabled, every lookup is delegated to the repository.
+ */
+final class FileIndex {
+
+    private final IFileRepository fileRepository;
+
+    private final boolean enabled;
+
+    private final Cache<Key, Set<Folder>> folders;
+
+    private final Cache<FolderKey, Set<File>> files;
+
+    FileIndex(IFileRepository fileRepository, boolean enabled, long maximumSize, long timeToLive, TimeUnit timeUnit) {
+        this.fileRepository = fileRepository;
+        this.enabled = enabled;
+        this.folders = Caffeine.newBuilder().
+                maximumSize(maximumSize).
+                expireAfterWrite(timeToLive, timeUnit).
+                build();
+        this.files = Caffeine.newBuilder().
+                maximumSize(maximumSize).
+                expireAfterWrite(timeToLive, timeUnit).
+                build();
+    }
+
+    boolean isFound(String application, String perimeter, Folder folder) {
+        if (!enabled) {
+            return fileRepository.isFound(application, perimeter, folder);
+        }
+        return getFolders(application, perimeter).contains(folder);
+    }
+
+    boolean isFound(String application, String perimeter, File file) {
+        if (!enabled) {
+            return fileRepository.isFound(application, perimeter, file);
+        }
+        return getFiles(application, perimeter, file.getFolder()).contains(file);
+    }
+
+    /**
+     * existence of the file before a write which creates it or overwrites it when it is not found:
+     * a miss is confirmed against the repository, as the file may have been created outside the service since it was listed
+     */
+    boolean isFoundBeforeWrite(String application, String perimeter, File file) {
+        if (!enabled) {
+            return fileRepository.isFound(application, perimeter, file);
+        }
+        Set<File> files = getFiles(application, perimeter, file.getFolder());
+        if (files.contains(file)) {
+            return true;
+        }
+        if (fileRepository.isFound(application, perimeter, file)) {
+            files.add(file);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * add a file which has been written through the service
+     */
+    void onWritten(String application, String perimeter, File file) {
+        if (enabled) {
+            getFiles(application, perimeter, file.getFolder()).add(file);
+        }
+    }
+
+    private Set<Folder> getFolders(String application, String perimeter) {
+        return get(folders, new Key(application, perimeter), () -> fileRepository.getFolders(application, perimeter));
+    }
+
+    private Set<File> getFiles(String application, String perimeter, Folder folder) {
+        return get(files, new FolderKey(application, perimeter, folder), () -> fileRepository.getFiles(application, perimeter, folder));
+    }
+
+    /**
+     * the listing is made outside of the cache, so that it does not block the other keys,
+     * when listed concurrently the first listing stored is kept, with the files written meanwhile
+     */
+    private static <K, V> Set<V> get(Cache<K, Set<V>> cache, K key, Supplier<Collection<V>> listing) {
+        Set<V> values = cache.getIfPresent(key);
+        if (values != null) {
+            return values;
+        }
+        Set<V> listed = ConcurrentHashMap.newKeySet();
+        listed.addAll(listing.get());
+        Set<V> current = cache.asMap().putIfAbsent(key, listed);
+        return current != null ? current : listed;
+    }
+
+    @Data
+    @RequiredArgsConstructor
+    private static class Key {
+        private final String application;
+        private final String perimeter;
+    }
+
+    @Data
+    @RequiredArgsConstructor
+    private static class FolderKey {
+        private final String application;
+        private final String perimeter;
+        private final Folder folder;
+    }
+}
@@ -1,25 +1,39 @@
 package com.ote.file.business;
 
 import com.ote.file.api.IFileService;
+import com.ote.file.api.cache.IContentCache;
 import com.ote.file.api.exception.*;
 import com.ote.file.api.model.File;
 import com.ote.file.api.model.Folder;
+import com.ote.file.api.model.Page;
+import com.ote.file.api.model.Versioned;
 import com.ote.file.spi.IApplicationRepository;
 import com.ote.file.spi.IFileRepository;
 import com.ote.file.spi.IUserRepository;
 import com.ote.file.spi.IUserRightRepository;
+import com.ote.file.spi.IVersionRepository;
+import io.vavr.control.Try;
 import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 
-import java.util.Set;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import static com.ote.file.business.FileServiceOptions.WriteMode;
+import static com.ote.file.spi.ILockRepository.KeyFileLock;
 import static com.ote.file.spi.IUserRightRepository.Privilege;
 
 @RequiredArgsConstructor(access = AccessLevel.PACKAGE)
 final class FileService implements IFileService {
 
+    private static final int WriteStampStripes = 1024;
+
     private final IUserRepository userRepository;
 
     private final IApplicationRepository applicationRepository;
@@ -30,6 +44,20 @@ final class FileService implements IFileService {
 
     private final LockService lockService;
 
+    private final FileIndex fileIndex;
+
+    private final FanOut fanOut;
+
+    private final IContentCache contentCache;
+
+    private final IVersionRepository versionRepository;
+
+    private final WriteMode writeMode;
+
+    private final AppendBuffer appendBuffer;
+
+    private final AtomicLongArray writeStamps = new AtomicLongArray(WriteStampStripes);
+
     @Override
     public Set<Folder> getFolders(String user, String application, String perimeter)
             throws UserNotFoundException, ApplicationNotFoundException, PerimeterNotFoundException, UnauthorizedException {
@@ -70,11 +98,71 @@ final class FileService implements IFileService {
         Privilege privilege = Privilege.READ;
         assertUserIsAuthorized(user, application, perimeter, privilege);
 
+        // folders are listed in parallel, so that the latency is the one of the slowest folder rather than the sum of all
         Set<Folder> folders = fileRepository.getFolders(application, perimeter);
-        return folders.stream().
-                map(folder -> fileRepository.getFiles(application, perimeter, folder)).
-                flatMap(p -> p.stream()).
-                collect(Collectors.toSet());
+        Set<File> files = ConcurrentHashMap.newKeySet();
+        fanOut.forEach(folders, folder -> files.addAll(fileRepository.getFiles(application, perimeter, folder)));
+        return files;
+    }
+
+    @Override
+    public Stream<Folder> streamFolders(String user, String application, String perimeter)
+            throws UserNotFoundException, ApplicationNotFoundException, PerimeterNotFoundException, UnauthorizedException {
+
+        assertUserFound(user);
+        assertApplicationFound(application);
+        assertPerimeterFound(application, perimeter);
+
+        Privilege privilege = Privilege.READ;
+        assertUserIsAuthorized(user, application, perimeter, privilege);
+
+        return fileRepository.streamFolders(application, perimeter);
+    }
+
+    @Override
+    public Stream<File> streamFiles(String user, String application, String perimeter, Folder folder)
+            throws UserNotFoundException, ApplicationNotFoundException, PerimeterNotFoundException, FolderNotFoundException, UnauthorizedException {
+
+        assertUserFound(user);
+        assertApplicationFound(application);
+        assertPerimeterFound(application, perimeter);
+
+        Privilege privilege = Privilege.READ;
+        assertUserIsAuthorized(user, application, perimeter, privilege);
+        assertFolderFound(application, perimeter, folder);
+
+        return fileRepository.streamFiles(application, perimeter, folder);
+    }
+
+    @Override
+    public Stream<File> streamFiles(String user, String application, String perimeter)
+            throws UserNotFoundException, ApplicationNotFoundException, PerimeterNotFoundException, UnauthorizedException {
+
+        assertUserFound(user);
+        assertApplicationFound(application);
+        assertPerimeterFound(application, perimeter);
+
+        Privilege privilege = Privilege.READ;
+        assertUserIsAuthorized(user, application, perimeter, privilege);
+
+        // each folder is only listed once the files of the previous one have been consumed (and its stream closed)
+        return fileRepository.streamFolders(application, perimeter).
+                flatMap(folder -> fileRepository.streamFiles(application, perimeter, folder));
+    }
+
+    @Override
+    public Page<File> getFiles(String user, String application, String perimeter, Folder folder, int pageSize, String continuationToken)
+            throws UserNotFoundException, ApplicationNotFoundException, PerimeterNotFoundException, FolderNotFoundException, UnauthorizedException {
+
+        assertUserFound(user);
+        assertApplicationFound(application);
+        assertPerimeterFound(application, perimeter);
+
+        Privilege privilege = Privilege.READ;
+        assertUserIsAuthorized(user, application, perimeter, privilege);
+        assertFolderFound(application, perimeter, folder);
+
+        return fileRepository.getFiles(application, perimeter, folder, pageSize, continuationToken);
     }
 
     @Override
@@ -91,13 +179,166 @@ final class FileService implements IFileService {
         assertFolderFound(application, perimeter, file.getFolder());
         assertFileFound(application, perimeter, file);
 
-        return withLockFile(user, application, perimeter, privilege, file, () -> fileRepository.read(file));
+        // cached contents are read without locking the file, as they are invalidated while the file is locked for writing
+        KeyFileLock key = new KeyFileLock(application, perimeter, file);
+        byte[] cachedContent = contentCache.getIfPresent(key);
+        if (cachedContent != null) {
+            return cachedContent;
+        }
+        return withLockFile(user, application, perimeter, privilege, file, () -> readContent(key));
+    }
+
+    @Override
+    public Versioned<byte[]> readVersioned(String user, String application, String perimeter, File file)
+            throws UserNotFoundException, ApplicationNotFoundException, PerimeterNotFoundException, FolderNotFoundException, FileNotFoundException, UnauthorizedException,
+            LockException {
+
+        IVersionRepository versionRepository = getVersionRepository();
+
+        assertUserFound(user);
+        assertApplicationFound(application);
+        assertPerimeterFound(application, perimeter);
+
+        Privilege privilege = Privilege.READ;
+        assertUserIsAuthorized(user, application, perimeter, privilege);
+        assertFolderFound(application, perimeter, file.getFolder());
+        assertFileFound(application, perimeter, file);
+
+        // the version is read before the content: a write committed in between (readers are not excluded in SNAPSHOT mode)
+        // gives a newer content with an older version, which only leads to a conflict on save, never to a lost update
+        KeyFileLock key = new KeyFileLock(application, perimeter, file);
+        return withLockFile(user, application, perimeter, privilege, file, () -> {
+            long version = versionRepository.getVersion(key);
+            byte[] content = writeMode == WriteMode.SNAPSHOT ? null : contentCache.getIfPresent(key);
+            return new Versioned<>(content != null ? content : readContent(key), version);
+        });
+    }
+
+    @Override
+    public byte[] read(String user, String application, String perimeter, File file, long offset, int length)
+            throws UserNotFoundException, ApplicationNotFoundException, PerimeterNotFoundException, FolderNotFoundException, FileNotFoundException, UnauthorizedException,
+            LockException {
+
+        if (offset < 0 || length < 0) {
+            throw new IllegalArgumentException(String.format("Invalid range of file '%s': offset %d, length %d", file.getPath(), offset, length));
+        }
+
+        assertUserFound(user);
+        assertApplicationFound(application);
+        assertPerimeterFound(application, perimeter);
+
+        Privilege privilege = Privilege.READ;
+        assertUserIsAuthorized(user, application, perimeter, privilege);
+        assertFolderFound(application, perimeter, file.getFolder());
+        assertFileFound(application, perimeter, file);
+
+        // a cached content is sliced rather than read again
+        byte[] cachedContent = contentCache.getIfPresent(new KeyFileLock(application, perimeter, file));
+        if (cachedContent != null) {
+            int from = (int) Math.min(offset, cachedContent.length);
+            return Arrays.copyOfRange(cachedContent, from, (int) Math.min(cachedContent.length, from + (long) length));
+        }
+        return withLockFile(user, application, perimeter, privilege, file, () -> fileRepository.read(file, offset, length));
+    }
+
+    @Override
+    public Map<File, Try<byte[]>> readAll(String user, String application, String perimeter, Collection<File> files)
+            throws UserNotFoundException, ApplicationNotFoundException, PerimeterNotFoundException, UnauthorizedException {
+
+        assertUserFound(user);
+        assertApplicationFound(application);
+        assertPerimeterFound(application, perimeter);
+
+        Privilege privilege = Privilege.READ;
+        assertUserIsAuthorized(user, application, perimeter, privilege);
+
+        Map<File, Try<byte[]>> results = new ConcurrentHashMap<>();
+        List<File> lockedFiles = new ArrayList<>();
+        try {
+            // files are locked in the order of their path, then all of them are read while they are locked
+            for (File file : sortByPath(files)) {
+                Try<byte[]> cachedContent = Try.of(() -> {
+                    assertFolderFound(application, perimeter, file.getFolder());
+                    assertFileFound(application, perimeter, file);
+                    return contentCache.getIfPresent(new KeyFileLock(application, perimeter, file));
+                });
+                if (cachedContent.isFailure() || cachedContent.get() != null) {
+                    results.put(file, cachedContent);
+                    continue;
+                }
+                Try<Void> locked = Try.run(() -> lockService.lockFile(user, application, perimeter, privilege, file));
+                if (locked.isSuccess()) {
+                    lockedFiles.add(file);
+                } else {
+                    results.put(file, Try.failure(locked.getCause()));
+                }
+            }
+
+            fanOut.forEach(lockedFiles, file -> results.put(file, Try.of(() -> readContent(new KeyFileLock(application, perimeter, file)))));
+        } finally {
+            // the content has been read under the lock, hence a failure to release it does not replace the result of the read
+            for (File file : lockedFiles) {
+                Try.run(() -> lockService.unlockFile(user, application, perimeter, privilege, file)).
+                        onFailure(e -> results.merge(file, Try.failure(e), (result, failure) -> result.onFailure(cause -> cause.addSuppressed(e))));
+            }
+        }
+
+        // results are returned in the order of the requested files
+        Map<File, Try<byte[]>> orderedResults = new LinkedHashMap<>();
+        files.forEach(file -> orderedResults.put(file, results.get(file)));
+        return orderedResults;
+    }
+
+    @Override
+    public InputStream readAsStream(String user, String application, String perimeter, File file)
+            throws UserNotFoundException, ApplicationNotFoundException, PerimeterNotFoundException, FolderNotFoundException, FileNotFoundException, UnauthorizedException,
+            LockException {
+
+        assertUserFound(user);
+        assertApplicationFound(application);
+        assertPerimeterFound(application, perimeter);
+
+        Privilege privilege = Privilege.READ;
+        assertUserIsAuthorized(user, application, perimeter, privilege);
+        assertFolderFound(application, perimeter, file.getFolder());
+        assertFileFound(application, perimeter, file);
+
+        // the lock is released when the stream is closed
+        lockService.lockFile(user, application, perimeter, privilege, file);
+        try {
+            return new LockedInputStream(fileRepository.openInputStream(file),
+                    () -> lockService.unlockFile(user, application, perimeter, privilege, file));
+        } catch (RuntimeException e) {
+            lockService.unlockFile(user, application, perimeter, privilege, file);
+            throw e;
+        }
     }
 
     @Override
     public void save(String user, String application, String perimeter, File file, byte[] content, boolean replaceIfFound)
             throws UserNotFoundException, ApplicationNotFoundException, PerimeterNotFoundException, FolderNotFoundException, FileFoundException, UnauthorizedException, LockException {
 
+        save(user, application, perimeter, file, replaceIfFound,
+                () -> fileRepository.write(file, content),
+                () -> fileRepository.stage(file, content));
+    }
+
+    @Override
+    public void save(String user, String application, String perimeter, File file, InputStream content, boolean replaceIfFound)
+            throws UserNotFoundException, ApplicationNotFoundException, PerimeterNotFoundException, FolderNotFoundException, FileFoundException, UnauthorizedException, LockException {
+
+        save(user, application, perimeter, file, replaceIfFound,
+                () -> fileRepository.write(file, content),
+                () -> fileRepository.stage(file, content));
+    }
+
+    @Override
+    public long save(String user, String application, String perimeter, File file, byte[] content, long expectedVersion)
+            throws UserNotFoundException, ApplicationNotFoundException, PerimeterNotFoundException, FolderNotFoundException, UnauthorizedException, LockException,
+            VersionConflictException {
+
+        IVersionRepository versionRepository = getVersionRepository();
+
         assertUserFound(user);
         assertApplicationFound(application);
         assertPerimeterFound(application, perimeter);
@@ -106,18 +347,113 @@ final class FileService implements IFileService {
         assertUserIsAuthorized(user, application, perimeter, privilege);
         assertFolderFound(application, perimeter, file.getFolder());
 
-        if (!replaceIfFound) {
-            // do not replace file if found --> make sure file does not exist (so that it will be created)
-            assertFileNotFound(application, perimeter, file);
+        // a conflict known beforehand does not need to stage the content
+        KeyFileLock key = new KeyFileLock(application, perimeter, file);
+        appendBuffer.flush(key);
+        assertVersion(key, expectedVersion, versionRepository.getVersion(key));
+
+        // the content is staged without lock, the file is only locked to check the version and commit
+        IFileRepository.StagedFile stagedFile = fileRepository.stage(file, content);
+        boolean committed = false;
+        try {
+            lockService.lockFile(user, application, perimeter, privilege, file);
+            try {
+                assertVersion(key, expectedVersion, versionRepository.getVersion(key));
+                write(application, perimeter, file, stagedFile::commit);
+                committed = true;
+                fileIndex.onWritten(application, perimeter, file);
+                return versionRepository.getVersion(key);
+            } finally {
+                lockService.unlockFile(user, application, perimeter, privilege, file);
+            }
+        } finally {
+            if (!committed) {
+                stagedFile.discard();
+            }
+        }
+    }
+
+    @Override
+    public void saveAll(String user, String application, String perimeter, Map<File, byte[]> contents, boolean replaceIfFound)
+            throws UserNotFoundException, ApplicationNotFoundException, PerimeterNotFoundException, FolderNotFoundException, FileFoundException, UnauthorizedException, LockException {
+
+        assertUserFound(user);
+        assertApplicationFound(application);
+        assertPerimeterFound(application, perimeter);
+
+        Privilege privilege = Privilege.WRITE;
+        assertUserIsAuthorized(user, application, perimeter, privilege);
+
+        List<File> files = sortByPath(contents.keySet());
+        for (File file : files) {
+            assertFolderFound(application, perimeter, file.getFolder());
+            if (!replaceIfFound) {
+                assertFileNotFound(application, perimeter, file);
+            }
         }
+        for (File file : files) {
+            appendBuffer.flush(new KeyFileLock(application, perimeter, file));
+        }
+
+        // files are locked in the order of their path, so that batches sharing files can not deadlock
+        List<File> lockedFiles = new ArrayList<>();
+        try {
+            for (File file : files) {
+                lockService.lockFile(user, application, perimeter, privilege, file);
+                lockedFiles.add(file);
+            }
 
-        withLockFile(user, application, perimeter, privilege, file, () -> fileRepository.write(file, content));
+            Map<File, IFileRepository.StagedFile> stagedFiles = stageAll(contents, files);
+            commitAll(application, perimeter, files, stagedFiles);
+        } finally {
+            for (int i = lockedFiles.size() - 1; i >= 0; i--) {
+                lockService.unlockFile(user, application, perimeter, privilege, lockedFiles.get(i));
+            }
+        }
     }
 
     @Override
     public void append(String user, String application, String perimeter, File file, byte[] content, boolean createIfNotFound)
             throws UserNotFoundException, ApplicationNotFoundException, PerimeterNotFoundException, FolderNotFoundException, FileNotFoundException, UnauthorizedException, LockException {
 
+        assertAppendable(user, application, perimeter, file, createIfNotFound);
+
+        KeyFileLock key = new KeyFileLock(application, perimeter, file);
+        if (appendBuffer.isEnabled()) {
+            appendBuffer.append(user, key, content, createIfNotFound, this::appendContent);
+            return;
+        }
+        appendContent(user, key, content, createIfNotFound);
+    }
+
+    @Override
+    public void append(String user, String application, String perimeter, File file, InputStream content, boolean createIfNotFound)
+            throws UserNotFoundException, ApplicationNotFoundException, PerimeterNotFoundException, FolderNotFoundException, FileNotFoundException, UnauthorizedException, LockException {
+
+        assertAppendable(user, application, perimeter, file, createIfNotFound);
+
+        // streams are not buffered, they are appended after the contents which are
+        appendBuffer.flush(new KeyFileLock(application, perimeter, file));
+        if (writeMode == WriteMode.SNAPSHOT) {
+            append(user, application, perimeter, file, createIfNotFound,
+                    () -> commit(fileRepository.stageAppend(file, content)),
+                    () -> commit(fileRepository.stage(file, content)));
+            return;
+        }
+        append(user, application, perimeter, file, createIfNotFound,
+                () -> fileRepository.append(file, content),
+                () -> fileRepository.write(file, content));
+    }
+
+    @Override
+    public void close() {
+        appendBuffer.close();
+    }
+
+    private void save(String user, String application, String perimeter, File file, boolean replaceIfFound, Runnable writer,
+                      Supplier<IFileRepository.StagedFile> stager)
+            throws UserNotFoundException, ApplicationNotFoundException, PerimeterNotFoundException, FolderNotFoundException, FileFoundException, UnauthorizedException, LockException {
+
         assertUserFound(user);
         assertApplicationFound(application);
         assertPerimeterFound(application, perimeter);
@@ -126,21 +462,195 @@ final class FileService implements IFileService {
         assertUserIsAuthorized(user, application, perimeter, privilege);
         assertFolderFound(application, perimeter, file.getFolder());
 
-        if (!createIfNotFound) {
-            // do not create file if not found --> make sure file exists (so that it will be updated)
-            assertFileFound(application, perimeter, file);
+        if (!replaceIfFound) {
+            // do not replace file if found --> make sure file does not exist (so that it will be created)
+            assertFileNotFound(application, perimeter, file);
+        }
+
+        // the buffered appends precede the content which replaces them
+        appendBuffer.flush(new KeyFileLock(application, perimeter, file));
+
+        if (writeMode == WriteMode.SNAPSHOT) {
+            // the content is staged before locking the file, the WRITE lock only excludes the other writers while it is committed
+            IFileRepository.StagedFile stagedFile = stager.get();
+            try {
+                lockService.lockFile(user, application, perimeter, privilege, file);
+            } catch (LockException e) {
+                stagedFile.discard();
+                throw e;
+            }
+            try {
+                write(application, perimeter, file, () -> commit(stagedFile));
+                fileIndex.onWritten(application, perimeter, file);
+            } finally {
+                lockService.unlockFile(user, application, perimeter, privilege, file);
+            }
+            return;
         }
 
         withLockFile(user, application, perimeter, privilege, file,
                 () -> {
-                    if (fileRepository.isFound(application, perimeter, file)) {
-                        fileRepository.append(file, content);
-                    } else {
-                        fileRepository.write(file, content);
-                    }
+                    write(application, perimeter, file, writer);
+                    fileIndex.onWritten(application, perimeter, file);
                 });
     }
 
+    private void assertAppendable(String user, String application, String perimeter, File file, boolean createIfNotFound)
+            throws UserNotFoundException, ApplicationNotFoundException, PerimeterNotFoundException, FolderNotFoundException, FileNotFoundException, UnauthorizedException {
+
+        assertUserFound(user);
+        assertApplicationFound(application);
+        assertPerimeterFound(application, perimeter);
+
+        Privilege privilege = Privilege.WRITE;
+        assertUserIsAuthorized(user, application, perimeter, privilege);
+        assertFolderFound(application, perimeter, file.getFolder());
+
+        if (!createIfNotFound) {
+            // do not create file if not found --> make sure file exists (so that it will be updated)
+            assertFileFound(application, perimeter, file);
+        }
+    }
+
+    /**
+     * append the content of a single append, or the coalesced contents of the buffered appends of the file
+     */
+    private void appendContent(String user, KeyFileLock key, byte[] content, boolean createIfNotFound) throws LockException, FileNotFoundException {
+        File file = key.getFile();
+        if (writeMode == WriteMode.SNAPSHOT) {
+            append(user, key.getApplication(), key.getPerimeter(), file, createIfNotFound,
+                    () -> commit(fileRepository.stageAppend(file, new ByteArrayInputStream(content))),
+                    () -> commit(fileRepository.stage(file, content)));
+            return;
+        }
+        append(user, key.getApplication(), key.getPerimeter(), file, createIfNotFound,
+                () -> fileRepository.append(file, content),
+                () -> fileRepository.write(file, content));
+    }
+
+    private void append(String user, String application, String perimeter, File file, boolean createIfNotFound, Runnable appender, Runnable creator)
+            throws LockException, FileNotFoundException {
+
+        Privilege privilege = Privilege.WRITE;
+        lockService.lockFile(user, application, perimeter, privilege, file);
+        try {
+            if (fileIndex.isFoundBeforeWrite(application, perimeter, file)) {
+                write(application, perimeter, file, appender);
+            } else if (!createIfNotFound) {
+                // the file has been removed since it was checked (or since the content was buffered), it must not be created
+                throw new FileNotFoundException(application, perimeter, file);
+            } else {
+                write(application, perimeter, file, creator);
+                fileIndex.onWritten(application, perimeter, file);
+            }
+        } finally {
+            lockService.unlockFile(user, application, perimeter, privilege, file);
+        }
+    }
+
+    /**
+     * commit the staged files one after the other: once a commit fails, the remaining staged files are discarded
+     * and the files which have already been committed are reported by a PartialCommitException
+     */
+    private void commitAll(String application, String perimeter, List<File> files, Map<File, IFileRepository.StagedFile> stagedFiles) {
+        int committed = 0;
+        int current = 0;
+        try {
+            for (; current < files.size(); current++) {
+                File file = files.get(current);
+                write(application, perimeter, file, () -> commit(stagedFiles.get(file)));
+                committed++;
+                fileIndex.onWritten(application, perimeter, file);
+            }
+        } catch (RuntimeException | Error e) {
+            // the staged file of the current file has either been committed or discarded by commit()
+            for (File file : files.subList(current + 1, files.size())) {
+                stagedFiles.get(file).discard();
+            }
+            if (committed == 0 || e instanceof Error) {
+                throw e;
+            }
+            throw new PartialCommitException(application, perimeter,
+                    new ArrayList<>(files.subList(0, committed)), new ArrayList<>(files.subList(committed, files.size())), e);
+        }
+    }
+
+    private Map<File, IFileRepository.StagedFile> stageAll(Map<File, byte[]> contents, List<File> files) {
+        Map<File, Try<IFileRepository.StagedFile>> stagedFiles = new ConcurrentHashMap<>();
+        fanOut.forEach(files, file -> stagedFiles.put(file, Try.of(() -> fileRepository.stage(file, contents.get(file)))));
+
+        Optional<Throwable> failure = stagedFiles.values().stream().filter(Try::isFailure).map(Try::getCause).findFirst();
+        if (failure.isPresent()) {
+            // nothing is committed if one of the files could not be staged
+            stagedFiles.values().forEach(stagedFile -> stagedFile.forEach(IFileRepository.StagedFile::discard));
+            Throwable cause = failure.get();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new IllegalStateException(cause);
+        }
+        return stagedFiles.entrySet().stream().collect(Collectors.toMap(Map.Entry::getKey, e -> e.getValue().get()));
+    }
+
+    /**
+     * read the content under the lock of the file and cache it
+     * in SNAPSHOT mode a write may be committed while the content is read, in which case the content which has been cached
+     * may be the previous version: it is invalidated as the write stamp of the file has changed
+     */
+    private byte[] readContent(KeyFileLock key) {
+        int stripe = getWriteStampStripe(key);
+        long writeStamp = writeStamps.get(stripe);
+        byte[] content = fileRepository.read(key.getFile());
+        contentCache.put(key, content);
+        if (writeStamps.get(stripe) != writeStamp) {
+            contentCache.invalidate(key);
+        }
+        return content;
+    }
+
+    /**
+     * write under the lock of the file, the cached content is invalidated even if the write fails as the file may be partially written,
+     * but the version is only incremented when the write succeeds: a partially failed IN_PLACE write leaves the version unchanged,
+     * hence an optimistic writer holding that version can still commit over the partially written file
+     */
+    private void write(String application, String perimeter, File file, Runnable writer) {
+        KeyFileLock key = new KeyFileLock(application, perimeter, file);
+        try {
+            writer.run();
+        } finally {
+            // the stamp is changed before the invalidation, so that a concurrent read either sees it or is invalidated after its put
+            writeStamps.incrementAndGet(getWriteStampStripe(key));
+            contentCache.invalidate(key);
+        }
+        // a failed write does not produce a new version
+        if (versionRepository != null) {
+            versionRepository.incrementVersion(key);
+        }
+    }
+
+    /**
+     * commit the staged file, which is discarded if the commit fails
+     */
+    private static void commit(IFileRepository.StagedFile stagedFile) {
+        boolean committed = false;
+        try {
+            stagedFile.commit();
+            committed = true;
+        } finally {
+            if (!committed) {
+                stagedFile.discard();
+            }
+        }
+    }
+
+    private static int getWriteStampStripe(KeyFileLock key) {
+        return (key.hashCode() & 0x7FFFFFFF) % WriteStampStripes;
+    }
+
+    private IVersionRepository getVersionRepository() {
+        if (versionRepository == null) {
+            throw new IllegalStateException("Versions are not tracked, a version repository has to be set in the options of the file service");
+        }
+        return versionRepository;
+    }
+
     private void withLockFile(String user, String application, String perimeter, Privilege privilege, File file, Runnable runnable) throws LockException {
         withLockFile(user, application, perimeter, privilege, file, () -> {
             runnable.run();
@@ -149,14 +659,21 @@ final class FileService implements IFileService {
     }
 
     private <T> T withLockFile(String user, String application, String perimeter, Privilege privilege, File file, Supplier<T> supplier) throws LockException {
+        // a lock which could not be acquired must not be released
+        lockService.lockFile(user, application, perimeter, privilege, file);
         try {
-            lockService.lockFile(user, application, perimeter, privilege, file);
             return supplier.get();
         } finally {
             lockService.unlockFile(user, application, perimeter, privilege, file);
         }
     }
 
+    private static List<File> sortByPath(Collection<File> files) {
+        List<File> sortedFiles = new ArrayList<>(new HashSet<>(files));
+        sortedFiles.sort(Comparator.comparing(File::getPath));
+        return sortedFiles;
+    }
+
     //region Assertions
     private void assertUserFound(String user) throws UserNotFoundException {
 
@@ -188,21 +705,28 @@ final class FileService implements IFileService {
 
     private void assertFolderFound(String application, String perimeter, Folder folder) throws FolderNotFoundException {
 
-        if (!fileRepository.isFound(application, perimeter, folder)) {
+        if (!fileIndex.isFound(application, perimeter, folder)) {
             throw new FolderNotFoundException(application, perimeter, folder);
         }
     }
 
     private void assertFileFound(String application, String perimeter, File file) throws FileNotFoundException {
 
-        if (!fileRepository.isFound(application, perimeter, file)) {
+        if (!fileIndex.isFound(application, perimeter, file)) {
             throw new FileNotFoundException(application, perimeter, file);
         }
     }
 
+    private static void assertVersion(KeyFileLock key, long expectedVersion, long actualVersion) throws VersionConflictException {
+
+        if (actualVersion != expectedVersion) {
+            throw new VersionConflictException(key.getApplication(), key.getPerimeter(), key.getFile(), expectedVersion, actualVersion);
+        }
+    }
+
     private void assertFileNotFound(String application, String perimeter, File file) throws FileFoundException {
 
-        if (fileRepository.isFound(application, perimeter, file)) {
+        if (fileIndex.isFoundBeforeWrite(application, perimeter, file)) {
             throw new FileFoundException(application, perimeter, file);
         }
     }
@@ -0,0 +1,161 @@
+package com.ote.file.business;
+
+import com.ote.file.api.cache.IContentCache;
+import com.ote.file.spi.IVersionRepository;
+import lombok.Builder;
+import lombok.Getter;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Optional settings of the file service created by the ServiceFactory
+ */
+@Getter
+@Builder
+public final class FileServiceOptions {
+
+    /**
+     * number of stripes used to synchronize the lock table per file (application, perimeter, file)
+     * 0 means every lock request is synchronized by the single lock of the ILockRepository
+     */
+    @Builder.Default
+    private final int lockStripes = 0;
+
+    /**
+     * behaviour of a lock request on a file which is locked with a conflicting privilege
+     */
+    @Builder.Default
+    private final LockAcquisition lockAcquisition = LockAcquisition.FAIL_FAST;
+
+    /**
+     * how files are written, hence whether readers are blocked by writers
+     */
+    @Builder.Default
+    private final WriteMode writeMode = WriteMode.IN_PLACE;
+
+    /**
+     * check the existence of folders and files against an index of each perimeter maintained by the service,
+     * instead of listing them from the IFileRepository on every request
+     */
+    @Builder.Default
+    private final boolean indexFiles = false;
+
+    /**
+     * maximum number of listings (folders of a perimeter, files of a folder) kept by the index
+     */
+    @Builder.Default
+    private final long indexMaximumSize = 10_000;
+
+    /**
+     * time to live of a listing of the index, folders and files created outside the service are not found before it expires
+     */
+    @Builder.Default
+    private final long indexTimeToLive = 60;
+
+    @Builder.Default
+    private final TimeUnit indexTimeUnit = TimeUnit.SECONDS;
+
+    /**
+     * executor of the repository calls which are run in parallel, by the listing of a perimeter and by batch reads and writes
+     * by default each call is run on its own virtual thread
+     */
+    @Builder.Default
+    private final Executor executor = VirtualThreadExecutor.Instance;
+
+    /**
+     * maximum number of repository calls run in parallel for a single request
+     */
+    @Builder.Default
+    private final int parallelism = 8;
+
+    /**
+     * cache of the contents read through the service, created by ServiceFactory.createContentCache
+     * by default nothing is cached
+     */
+    @Builder.Default
+    private final IContentCache contentCache = ContentCache.Disabled;
+
+    /**
+     * versions of the files, required by the optimistic save and the versioned read
+     * null means that versions are not tracked
+     */
+    private final IVersionRepository versionRepository;
+
+    /**
+     * appends of contents are buffered per file in memory and flushed as a single append (reads only see the contents which have been flushed)
+     * with ACK_ON_BUFFER the buffer of a file is flushed once it reaches this size, or once its oldest content has been buffered for the maximum delay
+     * 0 means every append is written straight away
+     */
+    @Builder.Default
+    private final int appendBufferMaximumBytes = 0;
+
+    /**
+     * with ACK_ON_BUFFER, maximum delay of a content in the buffer (ACK_ON_FLUSH flushes without delay)
+     */
+    @Builder.Default
+    private final long appendBufferMaximumDelay = 20;
+
+    @Builder.Default
+    private final TimeUnit appendBufferTimeUnit = TimeUnit.MILLISECONDS;
+
+    /**
+     * with ACK_ON_BUFFER, number of times a failed flush is retried in the background before the failure is reported to the next append
+     */
+    @Builder.Default
+    private final int appendBufferMaximumRetries = 3;
+
+    /**
+     * when a buffered append returns
+     */
+    @Builder.Default
+    private final AppendDurability appendDurability = AppendDurability.ACK_ON_FLUSH;
+
+    public static FileServiceOptions defaults() {
+        return builder().build();
+    }
+
+    public enum LockAcquisition {
+
+        /**
+         * the request is rejected with a LockException
+         */
+        FAIL_FAST,
+
+        /**
+         * the request waits in a FIFO queue of the file until it can lock it or the timeout exceeds
+         */
+        WAIT
+    }
+
+    public enum WriteMode {
+
+        /**
+         * files are written in place under the WRITE lock, which excludes readers
+         */
+        IN_PLACE,
+
+        /**
+         * contents are staged aside then committed at once (the IFileRepository staging must be atomic, see isStagingAtomic,
+         * otherwise the file service can not be created): readers are never blocked by writers and always read a complete version of the file,
+         * writers still exclude each other. Appends copy the current content of the file.
+         */
+        SNAPSHOT
+    }
+
+    public enum AppendDurability {
+
+        /**
+         * the append returns once its content is buffered, it is lost if the process crashes before the flush
+         * appends of a sequential producer are coalesced, hence the mode of the producers sensitive to latency
+         */
+        ACK_ON_BUFFER,
+
+        /**
+         * the append returns once the flush which contains its content has been written, and fails if the flush fails
+         * appends are group committed: an append is flushed straight away unless a flush of the file is in progress,
+         * in which case it is written with the other appends arriving meanwhile, hence only concurrent appends are coalesced
+         */
+        ACK_ON_FLUSH
+    }
+}
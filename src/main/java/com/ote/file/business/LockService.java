@@ -2,18 +2,24 @@ package com.ote.file.business;
 
 import com.ote.file.api.exception.LockException;
 import com.ote.file.api.model.File;
+import com.ote.file.spi.ILock;
 import com.ote.file.spi.ILockRepository;
-import lombok.AccessLevel;
-import lombok.RequiredArgsConstructor;
 
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
+import static com.ote.file.business.FileServiceOptions.LockAcquisition;
+import static com.ote.file.business.FileServiceOptions.WriteMode;
 import static com.ote.file.spi.ILockRepository.FileLock;
 import static com.ote.file.spi.ILockRepository.KeyFileLock;
 import static com.ote.file.spi.IUserRightRepository.Privilege;
 
-@RequiredArgsConstructor(access = AccessLevel.PACKAGE)
 final class LockService {
 
     private final ILockRepository lockRepository;
@@ -22,53 +28,191 @@ final class LockService {
 
     private final TimeUnit timeUnit;
 
+    private final StripedLock stripedLock;
+
+    private final LockAcquisition lockAcquisition;
+
+    private final WriteMode writeMode;
+
+    private final Map<KeyFileLock, WaitQueue> waitQueues = new ConcurrentHashMap<>();
+
+    LockService(ILockRepository lockRepository, long timeout, TimeUnit timeUnit) {
+        this(lockRepository, timeout, timeUnit, FileServiceOptions.defaults());
+    }
+
+    /**
+     * when options define lock stripes, lock requests are synchronized per stripe of files instead of
+     * the single lock of the repository (whose lock table must then support concurrent access)
+     */
+    LockService(ILockRepository lockRepository, long timeout, TimeUnit timeUnit, FileServiceOptions options) {
+        this.lockRepository = lockRepository;
+        this.timeout = timeout;
+        this.timeUnit = timeUnit;
+        this.stripedLock = options.getLockStripes() > 0 ? new StripedLock(options.getLockStripes()) : null;
+        this.lockAcquisition = options.getLockAcquisition();
+        this.writeMode = options.getWriteMode();
+    }
+
     /**
      * try to lock the file
-     * this method is synchronized, hence it is executed between lockRepository.lock() and lockRepository.unlock()
-     * each thread which call lockRepository.lock() should be blocked until thread which has taken the lock is unlocked
+     * this method is synchronized, hence it is executed between lock.tryLock() and lock.unlock()
+     * where lock is either the lock of the repository or the stripe of the file
+     * each thread which call lock.tryLock() should be blocked until thread which has taken the lock is unlocked
+     * <p>
+     * when the file is already locked with a conflicting privilege, the request is either rejected straight away,
+     * or queued until the file is released (in the order of arrival) if the lock acquisition mode is WAIT
      */
     void lockFile(String user, String application, String perimeter, Privilege privilege, File file) throws LockException {
-        withSynchronize(user, application, perimeter, privilege, file,
+        KeyFileLock keyFileLock = new KeyFileLock(application, perimeter, file);
+        FileLock fileLock = new FileLock(keyFileLock, user, privilege);
+
+        // in SNAPSHOT mode readers never conflict, hence they do not queue behind the writers waiting for the file
+        boolean snapshotRead = writeMode == WriteMode.SNAPSHOT && privilege == Privilege.READ;
+        if (lockAcquisition == LockAcquisition.WAIT && !snapshotRead) {
+            waitLockFile(fileLock, user, application, perimeter, privilege, file);
+            return;
+        }
+
+        Optional<FileLock> conflictingLock = tryLockFile(fileLock, user, application, perimeter, privilege, file);
+        if (conflictingLock.isPresent()) {
+            throw new LockException(user, application, perimeter, privilege.getAction(), file, conflictingLock.get().getUser());
+        }
+    }
+
+    /**
+     * release the lock held by the user on the file, the locks of the other readers are kept
+     * this method is synchronized, hence it is executed between lock.tryLock() and lock.unlock()
+     */
+    void unlockFile(String user, String application, String perimeter, Privilege privilege, File file) throws LockException {
+        KeyFileLock keyFileLock = new KeyFileLock(application, perimeter, file);
+        withSynchronize(keyFileLock, user, application, perimeter, privilege, file,
+                () -> lockRepository.unlockFile(new FileLock(keyFileLock, user, privilege)));
+
+        WaitQueue waitQueue = waitQueues.get(keyFileLock);
+        if (waitQueue != null) {
+            waitQueue.signalAll();
+        }
+    }
+
+    /**
+     * @return the lock which prevents from locking the file, empty if the file has been locked
+     */
+    private Optional<FileLock> tryLockFile(FileLock fileLock, String user, String application, String perimeter, Privilege privilege, File file) throws LockException {
+        FileLock[] conflictingLock = new FileLock[1];
+        withSynchronize(fileLock.getKey(), user, application, perimeter, privilege, file,
                 () -> {
-                    KeyFileLock keyFileLock = new KeyFileLock(application, perimeter, file);
-                    FileLock fileLock = new FileLock(keyFileLock, user, privilege);
-                    Optional<FileLock> currentLockOpt = lockRepository.getFileLock(keyFileLock);
+                    Optional<FileLock> currentLockOpt = lockRepository.getFileLock(fileLock.getKey());
                     if (currentLockOpt.isPresent()) {
                         FileLock currentLock = currentLockOpt.get();
-                        if (currentLock.getPrivilege() != Privilege.READ || fileLock.getPrivilege() != Privilege.READ) {
-                            throw new LockException(user, application, perimeter, privilege.getAction(), file, currentLock.getUser());
+                        if (isConflicting(currentLock.getPrivilege(), fileLock.getPrivilege())) {
+                            conflictingLock[0] = currentLock;
+                            return;
                         }
                     }
                     lockRepository.lockFile(fileLock);
                 });
+        return Optional.ofNullable(conflictingLock[0]);
     }
 
     /**
-     * release lock on the file
-     * this method is synchronized, hence it is executed between lockRepository.lock() and lockRepository.unlock()
+     * readers share the file, and in SNAPSHOT mode they do not conflict with writers either as contents are committed at once
      */
-    void unlockFile(String user, String application, String perimeter, Privilege privilege, File file) throws LockException {
-        withSynchronize(user, application, perimeter, privilege, file,
-                () -> {
-                    KeyFileLock keyFileLock = new KeyFileLock(application, perimeter, file);
-                    lockRepository.unlockFile(keyFileLock);
-                });
+    private boolean isConflicting(Privilege currentPrivilege, Privilege privilege) {
+        if (writeMode == WriteMode.SNAPSHOT) {
+            return currentPrivilege == Privilege.WRITE && privilege == Privilege.WRITE;
+        }
+        return currentPrivilege != Privilege.READ || privilege != Privilege.READ;
     }
 
-    private void withSynchronize(String user, String application, String perimeter, Privilege privilege, File file, LockedAction action) throws LockException {
+    /**
+     * queue the request until it is the first one of the file and the file can be locked
+     * readers queued behind a writer wait for it, so that writers are not starved by a steady stream of readers
+     */
+    private void waitLockFile(FileLock fileLock, String user, String application, String perimeter, Privilege privilege, File file) throws LockException {
+        long deadline = System.nanoTime() + timeUnit.toNanos(timeout);
+        KeyFileLock keyFileLock = fileLock.getKey();
+        WaitQueue waitQueue = waitQueues.compute(keyFileLock, (key, queue) -> (queue == null ? new WaitQueue() : queue).retain());
+        Object ticket = new Object();
+        waitQueue.lock.lock();
         try {
-            if (lockRepository.tryLock(timeout, timeUnit)) {
-                action.execute();
-            } else {
-                throw new LockException(user, application, perimeter, privilege.getAction(), file, timeout, timeUnit);
+            waitQueue.tickets.addLast(ticket);
+            while (true) {
+                if (waitQueue.tickets.peekFirst() == ticket && !tryLockFile(fileLock, user, application, perimeter, privilege, file).isPresent()) {
+                    waitQueue.tickets.removeFirst();
+                    waitQueue.released.signalAll();
+                    return;
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    break;
+                }
+                try {
+                    waitQueue.released.awaitNanos(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
             }
+            waitQueue.tickets.remove(ticket);
+            waitQueue.released.signalAll();
+            throw new LockException(user, application, perimeter, privilege.getAction(), file, timeout, timeUnit);
+        } finally {
+            waitQueue.lock.unlock();
+            waitQueues.computeIfPresent(keyFileLock, (key, queue) -> queue.release());
+        }
+    }
+
+    private void withSynchronize(KeyFileLock keyFileLock, String user, String application, String perimeter, Privilege privilege, File file, LockedAction action) throws LockException {
+        ILock lock = getLock(keyFileLock);
+        if (!lock.tryLock(timeout, timeUnit)) {
+            throw new LockException(user, application, perimeter, privilege.getAction(), file, timeout, timeUnit);
+        }
+        try {
+            action.execute();
         } finally {
-            lockRepository.unlock();
+            lock.unlock();
         }
     }
 
+    private ILock getLock(KeyFileLock keyFileLock) {
+        return stripedLock == null ? lockRepository : stripedLock.get(keyFileLock);
+    }
+
     @FunctionalInterface
     interface LockedAction {
         void execute() throws LockException;
     }
+
+    /**
+     * requests waiting for a file, the queue is removed once no request uses it anymore
+     */
+    private static final class WaitQueue {
+
+        private final ReentrantLock lock = new ReentrantLock();
+
+        private final Condition released = lock.newCondition();
+
+        private final Deque<Object> tickets = new ArrayDeque<>();
+
+        // only modified while the entry of the queue is locked by the map
+        private int users;
+
+        WaitQueue retain() {
+            users++;
+            return this;
+        }
+
+        WaitQueue release() {
+            return --users == 0 ? null : this;
+        }
+
+        void signalAll() {
+            lock.lock();
+            try {
+                released.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
 }
@@ -0,0 +1,37 @@
+package com.ote.file.business;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * stream which releases the lock of the file it reads when it is closed
+ */
+final class LockedInputStream extends FilterInputStream {
+
+    private final LockService.LockedAction release;
+
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+
+    LockedInputStream(InputStream in, LockService.LockedAction release) {
+        super(in);
+        this.release = release;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            super.close();
+        } finally {
+            try {
+                release.execute();
+            } catch (Exception e) {
+                throw new IOException(e);
+            }
+        }
+    }
+}
@@ -1,9 +1,15 @@
 package com.ote.file.business;
 
+import com.ote.file.api.IAsyncFileService;
 import com.ote.file.api.IFileService;
+import com.ote.file.api.cache.IApplicationCache;
+import com.ote.file.api.cache.IContentCache;
+import com.ote.file.api.cache.IUserCache;
+import com.ote.file.api.cache.IUserRightCache;
 import com.ote.file.spi.*;
 import lombok.NoArgsConstructor;
 
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 
 @NoArgsConstructor
@@ -17,7 +23,103 @@ public final class ServiceFactory {
                                           long timeout,
                                           TimeUnit timeUnit) {
 
-        LockService lockService = new LockService(lockRepository, timeout, timeUnit);
-        return new FileService(userRepository, applicationRepository, userRightRepository, fileRepository, lockService);
+        return createFileService(userRepository, applicationRepository, userRightRepository, fileRepository, lockRepository, timeout, timeUnit,
+                FileServiceOptions.defaults());
+    }
+
+    public IFileService createFileService(IUserRepository userRepository,
+                                          IApplicationRepository applicationRepository,
+                                          IUserRightRepository userRightRepository,
+                                          IFileRepository fileRepository,
+                                          ILockRepository lockRepository,
+                                          long timeout,
+                                          TimeUnit timeUnit,
+                                          FileServiceOptions options) {
+
+        if (options.getWriteMode() == FileServiceOptions.WriteMode.SNAPSHOT && !fileRepository.isStagingAtomic()) {
+            // readers would see the files being written
+            throw new IllegalArgumentException("The SNAPSHOT write mode requires a file repository whose staging is atomic");
+        }
+
+        LockService lockService = new LockService(lockRepository, timeout, timeUnit, options);
+        FileIndex fileIndex = new FileIndex(fileRepository, options.isIndexFiles(),
+                options.getIndexMaximumSize(), options.getIndexTimeToLive(), options.getIndexTimeUnit());
+        FanOut fanOut = new FanOut(options.getExecutor(), options.getParallelism());
+        return new FileService(userRepository, applicationRepository, userRightRepository, fileRepository, lockService, fileIndex, fanOut,
+                options.getContentCache(), options.getVersionRepository(), options.getWriteMode(), new AppendBuffer(options));
+    }
+
+    /**
+     * create an asynchronous file service which runs each call of the given file service on its own virtual thread
+     */
+    public IAsyncFileService createAsyncFileService(IFileService fileService) {
+
+        return createAsyncFileService(fileService, VirtualThreadExecutor.Instance);
+    }
+
+    /**
+     * create an asynchronous file service which runs each call of the given file service on the executor
+     * (the executor should be sized for blocking calls, as the lock acquisition and the repositories are blocking)
+     */
+    public IAsyncFileService createAsyncFileService(IFileService fileService, Executor executor) {
+
+        return new AsyncFileService(fileService, executor);
+    }
+
+    /**
+     * create a cache of the privileges in front of the given repository, which is meant to be given to createFileService
+     *
+     * @param maximumSize maximum number of (user, application, perimeter) entries, the less frequently used ones are evicted first
+     * @param timeToLive  duration after which an entry is reloaded from the repository
+     */
+    public IUserRightCache createUserRightCache(IUserRightRepository userRightRepository,
+                                                long maximumSize,
+                                                long timeToLive,
+                                                TimeUnit timeUnit) {
+
+        return new UserRightCache(userRightRepository, maximumSize, timeToLive, timeUnit);
+    }
+
+    /**
+     * create a cache of the existence of the users in front of the given repository, which is meant to be given to createFileService
+     *
+     * @param positiveTimeToLive duration after which a found user is checked again
+     * @param negativeTimeToLive duration after which a user which has not been found is checked again
+     */
+    public IUserCache createUserCache(IUserRepository userRepository,
+                                      long maximumSize,
+                                      long positiveTimeToLive,
+                                      long negativeTimeToLive,
+                                      TimeUnit timeUnit) {
+
+        return new UserCache(userRepository, maximumSize, positiveTimeToLive, negativeTimeToLive, timeUnit);
+    }
+
+    /**
+     * create a cache of the existence of the applications and perimeters in front of the given repository, which is meant to be given to createFileService
+     *
+     * @param positiveTimeToLive duration after which a found application or perimeter is checked again
+     * @param negativeTimeToLive duration after which an application or perimeter which has not been found is checked again
+     */
+    public IApplicationCache createApplicationCache(IApplicationRepository applicationRepository,
+                                                    long maximumSize,
+                                                    long positiveTimeToLive,
+                                                    long negativeTimeToLive,
+                                                    TimeUnit timeUnit) {
+
+        return new ApplicationCache(applicationRepository, maximumSize, positiveTimeToLive, negativeTimeToLive, timeUnit);
+    }
+
+    /**
+     * create a cache of the contents of the files, which is meant to be given to createFileService through FileServiceOptions
+     *
+     * @param maximumBytes maximum total size of the cached contents
+     * @param timeToLive   duration after which a content is read again from the repository
+     */
+    public IContentCache createContentCache(long maximumBytes,
+                                            long timeToLive,
+                                            TimeUnit timeUnit) {
+
+        return new ContentCache(maximumBytes, timeToLive, timeUnit);
     }
 }
@@ -0,0 +1,59 @@
+package com.ote.file.business;
+
+import com.ote.file.spi.ILock;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.ote.file.spi.ILockRepository.KeyFileLock;
+
+/**
+ * in-process locks spread over a fixed number of stripes,
+ * so that lock requests on unrelated files are synchronized independently
+ */
+final class StripedLock {
+
+    private final ILock[] stripes;
+
+    private final int mask;
+
+    StripedLock(int stripes) {
+        // round up to a power of two so that the stripe is selected with a mask
+        int size = stripes <= 1 ? 1 : Integer.highestOneBit(stripes - 1) << 1;
+        this.stripes = new ILock[size];
+        for (int i = 0; i < size; i++) {
+            this.stripes[i] = new Stripe();
+        }
+        this.mask = size - 1;
+    }
+
+    ILock get(KeyFileLock key) {
+        int hash = key.hashCode();
+        // spread the high bits so that close hash codes do not share the same stripe
+        return stripes[(hash ^ (hash >>> 16)) & mask];
+    }
+
+    int size() {
+        return stripes.length;
+    }
+
+    private static final class Stripe implements ILock {
+
+        private final ReentrantLock lock = new ReentrantLock();
+
+        @Override
+        public boolean tryLock(long timeout, TimeUnit timeUnit) {
+            try {
+                return lock.tryLock(timeout, timeUnit);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+
+        @Override
+        public void unlock() {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.ote.file.business;
+
+import com.ote.file.api.cache.CacheStatistics;
+import com.ote.file.api.cache.IUserCache;
+import com.ote.file.spi.IUserRepository;
+
+import java.util.concurrent.TimeUnit;
+
+final class UserCache implements IUserCache {
+
+    private final ExistenceCache<String> users;
+
+    UserCache(IUserRepository userRepository, long maximumSize, long positiveTimeToLive, long negativeTimeToLive, TimeUnit timeUnit) {
+        this.users = new ExistenceCache<>(userRepository::isFound, maximumSize, positiveTimeToLive, negativeTimeToLive, timeUnit);
+    }
+
+    @Override
+    public boolean isFound(String user) {
+        return users.isFound(user);
+    }
+
+    @Override
+    public void invalidate(String user) {
+        users.invalidate(user);
+    }
+
+    @Override
+    public void invalidateAll() {
+        users.invalidateAll();
+    }
+
+    @Override
+    public CacheStatistics getStatistics() {
+        return Caches.toStatistics(users.stats());
+    }
+}
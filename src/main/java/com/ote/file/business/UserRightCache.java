@@ -0,0 +1,66 @@
+package com.ote.file.business;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.ote.file.api.cache.CacheStatistics;
+import com.ote.file.api.cache.IUserRightCache;
+import com.ote.file.spi.IUserRightRepository;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+final class UserRightCache implements IUserRightCache {
+
+    private final LoadingCache<Key, Set<Privilege>> privileges;
+
+    UserRightCache(IUserRightRepository userRightRepository, long maximumSize, long timeToLive, TimeUnit timeUnit) {
+        this.privileges = Caffeine.newBuilder().
+                maximumSize(maximumSize).
+                expireAfterWrite(timeToLive, timeUnit).
+                recordStats().
+                build(key -> load(userRightRepository, key));
+    }
+
+    @Override
+    public Set<Privilege> getPrivileges(String user, String application, String perimeter) {
+        return privileges.get(new Key(user, application, perimeter));
+    }
+
+    @Override
+    public void invalidate(String user, String application, String perimeter) {
+        privileges.invalidate(new Key(user, application, perimeter));
+    }
+
+    @Override
+    public void invalidate(String user) {
+        privileges.asMap().keySet().removeIf(key -> key.getUser().equals(user));
+    }
+
+    @Override
+    public void invalidateAll() {
+        privileges.invalidateAll();
+    }
+
+    @Override
+    public CacheStatistics getStatistics() {
+        return Caches.toStatistics(privileges.stats());
+    }
+
+    private static Set<Privilege> load(IUserRightRepository userRightRepository, Key key) {
+        Set<Privilege> privileges = userRightRepository.getPrivileges(key.getUser(), key.getApplication(), key.getPerimeter());
+        // cached privileges are shared by all callers, hence they must not be modified
+        return privileges == null ? Collections.emptySet() : Collections.unmodifiableSet(new HashSet<>(privileges));
+    }
+
+    @Data
+    @RequiredArgsConstructor
+    private static class Key {
+        private final String user;
+        private final String application;
+        private final String perimeter;
+    }
+}
@@ -0,0 +1,23 @@
+package com.ote.file.business;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Executor which starts a new virtual thread for each task, so that blocking calls to the lock table and to the repositories
+ * only hold a carrier thread while they are running (the lock paths rely on java.util.concurrent locks, which do not pin it)
+ */
+final class VirtualThreadExecutor implements Executor {
+
+    static final VirtualThreadExecutor Instance = new VirtualThreadExecutor();
+
+    private final ThreadFactory threadFactory = Thread.ofVirtual().name("file-service-", 0).factory();
+
+    private VirtualThreadExecutor() {
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        threadFactory.newThread(command).start();
+    }
+}
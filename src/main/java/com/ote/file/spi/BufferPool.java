@@ -0,0 +1,153 @@
+package com.ote.file.spi;
+
+import lombok.Getter;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of direct byte buffers used by repositories to transfer contents without allocating them on every operation
+ * Buffers are grouped by size classes (powers of 2 between the minimum and the maximum size), each class keeping
+ * at most maxPooledBuffers released buffers. Buffers larger than the maximum size are allocated and dropped on release.
+ * <p>
+ * A buffer has to be released exactly once (by closing it), the number of acquired buffers which have not been released yet
+ * is given by getOutstandingCount, so that tests can detect leaks.
+ */
+public final class BufferPool {
+
+    public static final BufferPool Shared = new BufferPool(4 * 1024, 1024 * 1024, 16);
+
+    @Getter
+    private final int minimumSize;
+
+    @Getter
+    private final int maximumSize;
+
+    private final int maxPooledBuffers;
+
+    private final SizeClass[] sizeClasses;
+
+    private final AtomicLong outstandingCount = new AtomicLong();
+
+    private final AtomicLong allocationCount = new AtomicLong();
+
+    public BufferPool(int minimumSize, int maximumSize, int maxPooledBuffers) {
+        this.minimumSize = roundUpToPowerOfTwo(minimumSize);
+        this.maximumSize = Math.max(this.minimumSize, roundUpToPowerOfTwo(maximumSize));
+        this.maxPooledBuffers = maxPooledBuffers;
+        this.sizeClasses = new SizeClass[indexOf(this.maximumSize) + 1];
+        for (int i = 0; i < sizeClasses.length; i++) {
+            sizeClasses[i] = new SizeClass(this.minimumSize << i);
+        }
+    }
+
+    /**
+     * @return a cleared buffer whose limit is the given capacity, to be closed once it is not used anymore
+     */
+    public Buffer acquire(int capacity) {
+        ByteBuffer byteBuffer = capacity > maximumSize ? allocate(capacity) : sizeClasses[indexOf(capacity)].poll();
+        byteBuffer.clear().limit(capacity);
+        outstandingCount.incrementAndGet();
+        return new Buffer(byteBuffer);
+    }
+
+    /**
+     * number of buffers which have been acquired but not released yet
+     */
+    public long getOutstandingCount() {
+        return outstandingCount.get();
+    }
+
+    /**
+     * number of direct buffers allocated since the creation of the pool, which remains stable once the pool is warm
+     */
+    public long getAllocationCount() {
+        return allocationCount.get();
+    }
+
+    private void release(ByteBuffer byteBuffer) {
+        outstandingCount.decrementAndGet();
+        if (byteBuffer.capacity() <= maximumSize) {
+            sizeClasses[indexOf(byteBuffer.capacity())].offer(byteBuffer);
+        }
+    }
+
+    private ByteBuffer allocate(int capacity) {
+        allocationCount.incrementAndGet();
+        return ByteBuffer.allocateDirect(capacity);
+    }
+
+    private int indexOf(int capacity) {
+        int size = Math.max(minimumSize, roundUpToPowerOfTwo(capacity));
+        return Integer.numberOfTrailingZeros(size) - Integer.numberOfTrailingZeros(minimumSize);
+    }
+
+    private static int roundUpToPowerOfTwo(int value) {
+        return value <= 1 ? 1 : Integer.highestOneBit(value - 1) << 1;
+    }
+
+    /**
+     * buffer acquired from the pool, which is given back to the pool when it is closed
+     * a buffer is meant to be used by a single thread, it must not be used once closed
+     */
+    public final class Buffer implements AutoCloseable {
+
+        private ByteBuffer byteBuffer;
+
+        private Buffer(ByteBuffer byteBuffer) {
+            this.byteBuffer = byteBuffer;
+        }
+
+        public ByteBuffer get() {
+            if (byteBuffer == null) {
+                throw new IllegalStateException("The buffer has already been released");
+            }
+            return byteBuffer;
+        }
+
+        /**
+         * release the buffer, releasing it again has no effect
+         */
+        @Override
+        public void close() {
+            if (byteBuffer != null) {
+                release(byteBuffer);
+                byteBuffer = null;
+            }
+        }
+    }
+
+    private final class SizeClass {
+
+        private final int size;
+
+        private final Queue<ByteBuffer> buffers = new ConcurrentLinkedQueue<>();
+
+        private final AtomicInteger pooledCount = new AtomicInteger();
+
+        private SizeClass(int size) {
+            this.size = size;
+        }
+
+        private ByteBuffer poll() {
+            ByteBuffer byteBuffer = buffers.poll();
+            if (byteBuffer == null) {
+                return allocate(size);
+            }
+            pooledCount.decrementAndGet();
+            return byteBuffer;
+        }
+
+        private void offer(ByteBuffer byteBuffer) {
+            // buffers beyond the maximum number of pooled buffers are left to the garbage collector
+            if (pooledCount.incrementAndGet() <= maxPooledBuffers) {
+                buffers.offer(byteBuffer);
+            } else {
+                pooledCount.decrementAndGet();
+            }
+        }
+    }
+}
@@ -2,15 +2,83 @@ package com.ote.file.spi;
 
 import com.ote.file.api.model.File;
 import com.ote.file.api.model.Folder;
+import com.ote.file.api.model.Page;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
 import java.util.Set;
+import java.util.stream.Stream;
 
 public interface IFileRepository {
 
+    int ChunkSize = 64 * 1024;
+
     Set<Folder> getFolders(String application, String perimeter);
 
     Set<File> getFiles(String application, String perimeter, Folder folder);
 
+    /**
+     * iterate over the folders, the caller is responsible for closing the stream
+     * implementations should override this method in order to iterate lazily over the storage,
+     * the default one streams the set returned by getFolders
+     */
+    default Stream<Folder> streamFolders(String application, String perimeter) {
+        return getFolders(application, perimeter).stream();
+    }
+
+    /**
+     * iterate over the files of the folder, the caller is responsible for closing the stream
+     * implementations should override this method in order to iterate lazily over the storage,
+     * the default one streams the set returned by getFiles
+     */
+    default Stream<File> streamFiles(String application, String perimeter, Folder folder) {
+        return getFiles(application, perimeter, folder).stream();
+    }
+
+    /**
+     * get the files of the folder which follow the continuation token (all of them if null) by name, at most pageSize of them
+     * the token of the returned page is the name of its last file, so that pages remain consistent when files are added or removed.
+     * Files are iterated through streamFiles and only pageSize + 1 of them are kept in memory, but as the stream is not sorted
+     * every page scans the whole folder: implementations which keep their files sorted by name should override this method
+     * in order to resume from the continuation token and stop after the page
+     */
+    default Page<File> getFiles(String application, String perimeter, Folder folder, int pageSize, String continuationToken) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("The size of a page must be positive: " + pageSize);
+        }
+
+        // the greatest of the kept files is on top, so that it is the one removed when a smaller file comes
+        Comparator<File> byName = Comparator.comparing(File::getName);
+        PriorityQueue<File> smallestFiles = new PriorityQueue<>(pageSize + 1, byName.reversed());
+        try (Stream<File> files = streamFiles(application, perimeter, folder)) {
+            files.filter(file -> continuationToken == null || file.getName().compareTo(continuationToken) > 0).
+                    forEach(file -> {
+                        smallestFiles.add(file);
+                        if (smallestFiles.size() > pageSize + 1) {
+                            smallestFiles.poll();
+                        }
+                    });
+        }
+
+        List<File> items = new ArrayList<>(smallestFiles);
+        items.sort(byName);
+        if (items.size() <= pageSize) {
+            return new Page<>(items, null);
+        }
+        items = new ArrayList<>(items.subList(0, pageSize));
+        return new Page<>(items, items.get(pageSize - 1).getName());
+    }
+
     default boolean isFound(String application, String perimeter, Folder folder) {
         return getFolders(application, perimeter).
                 stream().
@@ -24,19 +92,127 @@ public interface IFileRepository {
 
     void write(File file, byte[] content);
 
-    default void append(File file, byte[] content) {
-        StringBuilder sb = new StringBuilder();
-        byte[] current = read(file);
-        if (current != null) {
-            for (byte b : current) {
-                sb.append((char) b);
+    /**
+     * append the content at the end of the file, the cost should only depend on the size of the content
+     * (implementations must not rewrite the current content of the file)
+     */
+    void append(File file, byte[] content);
+
+    /**
+     * write the content of the stream by chunks of ChunkSize bytes, the stream is not closed
+     * the first chunk replaces the file, the next ones are appended
+     */
+    default void write(File file, InputStream content) {
+        byte[] buffer = new byte[ChunkSize];
+        int length = readChunk(content, buffer);
+        write(file, Arrays.copyOf(buffer, length));
+        if (length == buffer.length) {
+            append(file, content);
+        }
+    }
+
+    /**
+     * append the content of the stream by chunks of ChunkSize bytes, the stream is not closed
+     */
+    default void append(File file, InputStream content) {
+        byte[] buffer = new byte[ChunkSize];
+        int length;
+        while ((length = readChunk(content, buffer)) > 0) {
+            append(file, Arrays.copyOf(buffer, length));
+        }
+    }
+
+    /**
+     * prepare the content of the file without making it visible, the content is only written once the staged file is committed
+     * implementations should override this method in order to stage on the storage (for instance in a temporary file
+     * which is renamed on commit), so that committing is cheap and unlikely to fail.
+     * The default one keeps the content in memory and writes it on commit
+     */
+    default StagedFile stage(File file, byte[] content) {
+        return new StagedFile() {
+            @Override
+            public void commit() {
+                write(file, content);
             }
+
+            @Override
+            public void discard() {
+            }
+        };
+    }
+
+    /**
+     * whether committing a staged file replaces the file at once (for instance by a rename), so that readers never see
+     * a partially written file, which is required by the SNAPSHOT write mode of the file service
+     * the default stage only writes the file on commit, hence it is not atomic
+     */
+    default boolean isStagingAtomic() {
+        return false;
+    }
+
+    /**
+     * stage the content of the stream, the stream is not closed
+     * implementations should override this method in order to stream the content to the storage,
+     * the default one loads the whole content in memory
+     */
+    default StagedFile stage(File file, InputStream content) {
+        try {
+            return stage(file, IOUtils.toByteArray(content));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
-        for (byte b : content) {
-            sb.append((char) b);
+    }
+
+    /**
+     * stage the current content of the file followed by the given content, so that the append is committed at once
+     * unlike append, the cost depends on the size of the file as its current content is copied
+     */
+    default StagedFile stageAppend(File file, InputStream content) {
+        try (InputStream currentContent = openInputStream(file)) {
+            return stage(file, new SequenceInputStream(currentContent, content));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
-        write(file, sb.toString().getBytes());
     }
 
     byte[] read(File file);
+
+    /**
+     * read at most length bytes of the file from the given offset, less bytes are returned when the end of the file is reached
+     * implementations should override this method in order to read the range only (for instance with a positional read),
+     * the default one skips the beginning of the stream opened by openInputStream, the content grows with the bytes actually read
+     * so that a length larger than the file does not allocate it
+     */
+    default byte[] read(File file, long offset, int length) {
+        try (InputStream inputStream = openInputStream(file)) {
+            IOUtils.skip(inputStream, offset);
+            return IOUtils.toByteArray(new BoundedInputStream(inputStream, length));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * open a stream on the content of the file, the caller is responsible for closing it
+     * implementations should override this method in order to stream from the storage,
+     * the default one loads the whole content in memory through read(file)
+     */
+    default InputStream openInputStream(File file) {
+        return new ByteArrayInputStream(read(file));
+    }
+
+    interface StagedFile {
+
+        void commit();
+
+        void discard();
+    }
+
+    static int readChunk(InputStream inputStream, byte[] buffer) {
+        try {
+            return IOUtils.read(inputStream, buffer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
 }
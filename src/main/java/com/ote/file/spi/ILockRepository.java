@@ -7,15 +7,33 @@ import lombok.RequiredArgsConstructor;
 import java.util.Optional;
 import java.util.concurrent.TimeUnit;
 
+/**
+ * Lock table of the files
+ * When the file service is configured with lock stripes, the methods of the lock table may be called concurrently
+ * for different keys (calls for the same key remain serialized), otherwise they are serialized by getLock()
+ * <p>
+ * The file service may run on virtual threads: implementations should rely on java.util.concurrent locks
+ * rather than blocking inside synchronized blocks, which would pin the carrier thread
+ */
 public interface ILockRepository extends ILock {
 
     ILock getLock();
 
+    /**
+     * get one of the locks currently held on the file: the WRITE lock if any, otherwise one of the READ locks
+     */
     Optional<FileLock> getFileLock(KeyFileLock key);
 
+    /**
+     * add a hold on the file, READ locks are shared hence a file may be held by several readers at the same time
+     */
     void lockFile(FileLock fileLock);
 
-    void unlockFile(KeyFileLock key);
+    /**
+     * release one hold of the given user and privilege on the file, the other holders keep their lock
+     * releasing a lock which is not held has no effect
+     */
+    void unlockFile(FileLock fileLock);
 
 
     default boolean tryLock(long timeout, TimeUnit timeUnit) {
@@ -0,0 +1,19 @@
+package com.ote.file.spi;
+
+import com.ote.file.spi.ILockRepository.KeyFileLock;
+
+/**
+ * Versions of the files, which are incremented by every write of the file service
+ * The version of a file which has never been written through the service is 0
+ */
+public interface IVersionRepository {
+
+    long getVersion(KeyFileLock key);
+
+    /**
+     * called by the file service while the file is locked for writing, hence never concurrently for the same file
+     *
+     * @return the new version of the file
+     */
+    long incrementVersion(KeyFileLock key);
+}
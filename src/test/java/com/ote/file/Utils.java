@@ -3,6 +3,7 @@ package com.ote.file;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 
 public final class Utils {
 
@@ -22,6 +23,14 @@ public final class Utils {
         }
     }
 
+    public static void appendFile(String path, byte[] content) {
+        try {
+            Files.write(Paths.get(path), content, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     public static byte[] readFile(String path) {
         try {
             return Files.readAllBytes(Paths.get(path));
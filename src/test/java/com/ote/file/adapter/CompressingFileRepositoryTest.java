@@ -0,0 +1,236 @@
+package com.ote.file.adapter;
+
+import com.ote.file.Utils;
+import com.ote.file.api.model.File;
+import com.ote.file.api.model.Folder;
+import com.ote.file.spi.IFileRepository;
+import org.apache.commons.io.IOUtils;
+import org.assertj.core.api.Assertions;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+public class CompressingFileRepositoryTest {
+
+    private static final String APPLICATION = "application";
+    private static final String PERIMETER = "perimeter";
+    private static final String RAW_PERIMETER = "raw perimeter";
+
+    private final Folder folder = new Folder(".", "target", "testCompressingFileRepository");
+
+    private final Folder rawFolder = new Folder(folder, "raw");
+
+    private LocalFileRepository localFileRepository;
+
+    private CompressingFileRepository fileRepository;
+
+    @Before
+    public void init() throws Exception {
+        Files.createDirectories(Paths.get(rawFolder.getPath()));
+        localFileRepository = new LocalFileRepository();
+        localFileRepository.addFolder(APPLICATION, PERIMETER, folder);
+        localFileRepository.addFolder(APPLICATION, RAW_PERIMETER, rawFolder);
+        fileRepository = new CompressingFileRepository(localFileRepository, Compression.builder().build());
+    }
+
+    @Test
+    public void textIsStoredCompressed() throws Exception {
+        File file = new File(folder, "text.csv");
+        byte[] content = csv(10_000);
+
+        fileRepository.write(file, content);
+
+        Assertions.assertThat(Files.size(Paths.get(file.getPath()))).isLessThan(content.length / 5);
+        Assertions.assertThat(fileRepository.read(file)).isEqualTo(content);
+    }
+
+    @Test
+    public void smallContentIsStoredRaw() throws Exception {
+        File file = new File(folder, "small.txt");
+        byte[] content = "small".getBytes();
+
+        fileRepository.write(file, content);
+
+        // magic number, frame type and length
+        Assertions.assertThat(Files.size(Paths.get(file.getPath()))).isEqualTo(4 + 1 + 4 + content.length);
+        Assertions.assertThat(fileRepository.read(file)).isEqualTo(content);
+    }
+
+    @Test
+    public void appendedFramesAreStreamed() throws Exception {
+        File file = new File(folder, "appended.log");
+        Files.deleteIfExists(Paths.get(file.getPath()));
+        byte[] first = csv(1000);
+        byte[] second = "tiny".getBytes();
+        byte[] third = csv(2000);
+
+        fileRepository.append(file, first);
+        fileRepository.append(file, second);
+        fileRepository.append(file, third);
+
+        byte[] expected = concat(first, second, third);
+        try (InputStream inputStream = fileRepository.openInputStream(file)) {
+            Assertions.assertThat(IOUtils.toByteArray(inputStream)).isEqualTo(expected);
+        }
+        Assertions.assertThat(fileRepository.read(file, first.length, second.length)).isEqualTo(second);
+    }
+
+    @Test
+    public void dictionaryImprovesSmallContents() {
+        byte[] dictionary = "{\"application\":\"\",\"perimeter\":\"\",\"user\":\"\",\"privilege\":\"READ\"}".getBytes(StandardCharsets.UTF_8);
+        byte[] content = "{\"application\":\"billing\",\"perimeter\":\"europe\",\"user\":\"jdoe\",\"privilege\":\"READ\"}".getBytes(StandardCharsets.UTF_8);
+        Compression withoutDictionary = Compression.builder().threshold(16).build();
+        Compression withDictionary = Compression.builder().threshold(16).dictionary(dictionary).build();
+
+        File file = new File(folder, "small.json");
+        new CompressingFileRepository(localFileRepository, withoutDictionary).write(file, content);
+        long sizeWithoutDictionary = Paths.get(file.getPath()).toFile().length();
+
+        CompressingFileRepository dictionaryRepository = new CompressingFileRepository(localFileRepository, withDictionary);
+        dictionaryRepository.write(file, content);
+        long sizeWithDictionary = Paths.get(file.getPath()).toFile().length();
+
+        Assertions.assertThat(sizeWithDictionary).isLessThan(sizeWithoutDictionary);
+        Assertions.assertThat(dictionaryRepository.read(file)).isEqualTo(content);
+    }
+
+    @Test
+    public void compressionIsConfiguredPerPerimeter() throws Exception {
+        fileRepository.setCompression(APPLICATION, RAW_PERIMETER, Compression.None);
+        fileRepository.addFolder(APPLICATION, RAW_PERIMETER, rawFolder);
+        File file = new File(rawFolder, "raw.csv");
+        byte[] content = csv(1000);
+
+        fileRepository.write(file, content);
+
+        // stored in a single raw frame
+        Assertions.assertThat(Files.size(Paths.get(file.getPath()))).isEqualTo(4 + 1 + 4 + content.length);
+        Assertions.assertThat(fileRepository.read(file)).isEqualTo(content);
+    }
+
+    @Test
+    public void uncompressedContentStartingWithMagicNumberIsFramed() throws Exception {
+        fileRepository.setCompression(APPLICATION, RAW_PERIMETER, Compression.None);
+        fileRepository.addFolder(APPLICATION, RAW_PERIMETER, rawFolder);
+        File file = new File(rawFolder, "magic.bin");
+        byte[] content = {0x00, 'Z', 'F', 0x01, 0x07, 0x00};
+
+        fileRepository.write(file, content);
+        fileRepository.append(file, content);
+
+        Assertions.assertThat(fileRepository.read(file)).isEqualTo(concat(content, content));
+    }
+
+    @Test
+    public void fileIsNotReplacedWhenItsHeadCanNotBeRead() {
+        IFileRepository failingRepository = Mockito.mock(IFileRepository.class);
+        File file = new File(folder, "unreadable.txt");
+        Mockito.when(failingRepository.read(file, 0, 4)).thenThrow(new UncheckedIOException(new IOException("Input/output error")));
+        CompressingFileRepository compressingRepository = new CompressingFileRepository(failingRepository, Compression.builder().build());
+
+        Assertions.assertThatThrownBy(() -> compressingRepository.append(file, "content".getBytes())).
+                isInstanceOf(UncheckedIOException.class);
+
+        Mockito.verify(failingRepository, Mockito.never()).write(Mockito.any(File.class), Mockito.any(byte[].class));
+    }
+
+    @Test
+    public void rawFilesAreReadAndAppendedAsIs() throws Exception {
+        File file = new File(folder, "legacy.txt");
+        Utils.saveFile(file.getPath(), "legacy content".getBytes());
+
+        fileRepository.append(file, csv(100));
+
+        Assertions.assertThat(Utils.readFile(file.getPath())).isEqualTo(concat("legacy content".getBytes(), csv(100)));
+        Assertions.assertThat(fileRepository.read(file)).isEqualTo(concat("legacy content".getBytes(), csv(100)));
+    }
+
+    @Test
+    public void streamedContentIsDeflatedInASingleFrame() throws Exception {
+        File file = new File(folder, "streamed.csv");
+        byte[] content = csv(20_000);
+
+        fileRepository.write(file, new ByteArrayInputStream(content));
+
+        // magic number, deflated frame type and the length of the whole payload
+        DataInputStream stored = new DataInputStream(new ByteArrayInputStream(Utils.readFile(file.getPath())));
+        Assertions.assertThat(stored.readInt()).isEqualTo(0x005A4601);
+        Assertions.assertThat(stored.readByte()).isEqualTo((byte) 1);
+        Assertions.assertThat(stored.readInt()).isEqualTo(stored.available()).isLessThan(content.length / 5);
+        Assertions.assertThat(fileRepository.read(file)).isEqualTo(content);
+    }
+
+    @Test
+    public void streamedContentIsSplitInRawFramesWhenCompressionIsDisabled() throws Exception {
+        fileRepository.setCompression(APPLICATION, RAW_PERIMETER, Compression.None);
+        fileRepository.addFolder(APPLICATION, RAW_PERIMETER, rawFolder);
+        File file = new File(rawFolder, "streamed.csv");
+        byte[] content = csv(5000);
+
+        fileRepository.write(file, new ByteArrayInputStream(content));
+
+        int frames = (content.length + IFileRepository.ChunkSize - 1) / IFileRepository.ChunkSize;
+        Assertions.assertThat(Files.size(Paths.get(file.getPath()))).isEqualTo(4 + frames * (1 + 4) + content.length);
+        Assertions.assertThat(fileRepository.read(file)).isEqualTo(content);
+    }
+
+    @Test
+    public void streamedContentIsAppendedAndStaged() throws Exception {
+        File file = new File(folder, "streamed.log");
+        Files.deleteIfExists(Paths.get(file.getPath()));
+        byte[] first = csv(5000);
+        byte[] second = csv(10);
+        byte[] third = csv(3000);
+
+        fileRepository.append(file, new ByteArrayInputStream(first));
+        fileRepository.append(file, new ByteArrayInputStream(second));
+        fileRepository.stageAppend(file, new ByteArrayInputStream(third)).commit();
+
+        Assertions.assertThat(fileRepository.read(file)).isEqualTo(concat(first, second, third));
+    }
+
+    @Test
+    public void appendIsStagedWithoutInflatingTheFile() {
+        IFileRepository innerRepository = Mockito.spy(localFileRepository);
+        CompressingFileRepository compressingRepository = new CompressingFileRepository(innerRepository, Compression.builder().build());
+        File file = new File(folder, "staged.log");
+        compressingRepository.write(file, csv(1000));
+
+        compressingRepository.stageAppend(file, new ByteArrayInputStream(csv(2000))).commit();
+
+        Mockito.verify(innerRepository).stageAppend(Mockito.eq(file), Mockito.any(InputStream.class));
+        Mockito.verify(innerRepository, Mockito.never()).read(file);
+        Assertions.assertThat(compressingRepository.read(file)).isEqualTo(concat(csv(1000), csv(2000)));
+    }
+
+    private static byte[] csv(int lines) {
+        StringBuilder csv = new StringBuilder("id;user;application;perimeter\n");
+        for (int i = 0; i < lines; i++) {
+            csv.append(i).append(";user").append(i % 10).append(";application;perimeter").append(i % 3).append('\n');
+        }
+        return csv.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] concat(byte[]... contents) {
+        int length = 0;
+        for (byte[] content : contents) {
+            length += content.length;
+        }
+        byte[] result = new byte[length];
+        int position = 0;
+        for (byte[] content : contents) {
+            System.arraycopy(content, 0, result, position, content.length);
+            position += content.length;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,197 @@
+package com.ote.file.adapter;
+
+import com.ote.file.api.model.File;
+import com.ote.file.api.model.Folder;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.assertj.core.api.Assertions;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.Stream;
+
+public class DeduplicatingFileRepositoryTest {
+
+    private static final String APPLICATION = "application";
+    private static final String PERIMETER = "perimeter";
+    private static final String OTHER_PERIMETER = "other perimeter";
+
+    private final Folder folder = new Folder(".", "target", "testDeduplicatingFileRepository", "files");
+
+    private final Folder otherFolder = new Folder(".", "target", "testDeduplicatingFileRepository", "otherFiles");
+
+    private final Path chunkDirectory = Paths.get("target", "testDeduplicatingFileRepository", "chunks");
+
+    private DeduplicatingFileRepository fileRepository;
+
+    private final byte[] content = new byte[1024 * 1024];
+
+    @Before
+    public void init() throws Exception {
+        FileUtils.deleteDirectory(Paths.get("target", "testDeduplicatingFileRepository").toFile());
+        Files.createDirectories(Paths.get(folder.getPath()));
+        Files.createDirectories(Paths.get(otherFolder.getPath()));
+
+        LocalFileRepository manifestRepository = new LocalFileRepository();
+        manifestRepository.addFolder(APPLICATION, PERIMETER, folder);
+        manifestRepository.addFolder(APPLICATION, OTHER_PERIMETER, otherFolder);
+        fileRepository = new DeduplicatingFileRepository(manifestRepository, chunkDirectory);
+
+        new Random(42).nextBytes(content);
+    }
+
+    @Test
+    public void writeThenReadOK() throws Exception {
+        File file = new File(folder, "writeThenReadOK.bin");
+
+        fileRepository.write(file, content);
+
+        Assertions.assertThat(fileRepository.read(file)).isEqualTo(content);
+        Assertions.assertThat(fileRepository.isFound(APPLICATION, PERIMETER, file)).isTrue();
+        try (InputStream inputStream = fileRepository.openInputStream(file)) {
+            Assertions.assertThat(IOUtils.toByteArray(inputStream)).isEqualTo(content);
+        }
+
+        File empty = new File(folder, "empty.bin");
+        fileRepository.write(empty, new byte[0]);
+        Assertions.assertThat(fileRepository.read(empty)).isEmpty();
+    }
+
+    @Test
+    public void identicalContentIsStoredOnce() {
+        fileRepository.write(new File(folder, "copy1.bin"), content);
+        long storedBytes = fileRepository.getStatistics().getStoredBytes();
+
+        // same content saved again, and in another perimeter
+        fileRepository.write(new File(folder, "copy1.bin"), content);
+        fileRepository.write(new File(otherFolder, "copy2.bin"), content);
+
+        DeduplicatingFileRepository.Statistics statistics = fileRepository.getStatistics();
+        Assertions.assertThat(statistics.getStoredBytes()).isEqualTo(storedBytes).isEqualTo(content.length);
+        Assertions.assertThat(statistics.getWrittenBytes()).isEqualTo(3L * content.length);
+        Assertions.assertThat(statistics.getSavedBytes()).isEqualTo(2L * content.length);
+        Assertions.assertThat(statistics.getDeduplicationRatio()).isEqualTo(3.0);
+        Assertions.assertThat(fileRepository.read(new File(otherFolder, "copy2.bin"))).isEqualTo(content);
+    }
+
+    @Test
+    public void onlyChangedChunksAreStored() {
+        fileRepository.write(new File(folder, "original.bin"), content);
+
+        // a few bytes inserted in the middle shift the end of the content, which is found again thanks to content-defined chunks
+        byte[] modified = new byte[content.length + 3];
+        System.arraycopy(content, 0, modified, 0, content.length / 2);
+        System.arraycopy(content, content.length / 2, modified, content.length / 2 + 3, content.length / 2);
+        fileRepository.write(new File(folder, "modified.bin"), modified);
+
+        long newBytes = fileRepository.getStatistics().getStoredBytes() - content.length;
+        Assertions.assertThat(newBytes).isLessThan(3L * DeduplicatingFileRepository.DefaultMaximumChunkSize);
+        Assertions.assertThat(fileRepository.read(new File(folder, "modified.bin"))).isEqualTo(modified);
+    }
+
+    @Test
+    public void appendAndRangeOK() {
+        File file = new File(folder, "appendAndRangeOK.bin");
+        int half = content.length / 2;
+
+        fileRepository.write(file, Arrays.copyOfRange(content, 0, half));
+        fileRepository.append(file, Arrays.copyOfRange(content, half, content.length));
+
+        Assertions.assertThat(fileRepository.read(file)).isEqualTo(content);
+        Assertions.assertThat(fileRepository.read(file, 100_000, 50_000)).isEqualTo(Arrays.copyOfRange(content, 100_000, 150_000));
+        Assertions.assertThat(fileRepository.read(file, content.length - 10, 100)).isEqualTo(Arrays.copyOfRange(content, content.length - 10, content.length));
+        Assertions.assertThat(fileRepository.read(file, content.length - 10, Integer.MAX_VALUE)).isEqualTo(Arrays.copyOfRange(content, content.length - 10, content.length));
+        Assertions.assertThat(fileRepository.read(file, content.length + 10, 100)).isEmpty();
+        Assertions.assertThat(fileRepository.getStatistics().getWrittenBytes()).isEqualTo(content.length);
+    }
+
+    @Test
+    public void appendOnlyAppendsToManifest() throws Exception {
+        File file = new File(folder, "appendOnlyAppendsToManifest.bin");
+        Path manifest = Paths.get(file.getPath());
+        int half = content.length / 2;
+
+        fileRepository.write(file, Arrays.copyOfRange(content, 0, half));
+        byte[] previousManifest = Files.readAllBytes(manifest);
+        fileRepository.append(file, new ByteArrayInputStream(Arrays.copyOfRange(content, half, content.length)));
+
+        Assertions.assertThat(Arrays.copyOf(Files.readAllBytes(manifest), previousManifest.length)).isEqualTo(previousManifest);
+        Assertions.assertThat(fileRepository.read(file)).isEqualTo(content);
+    }
+
+    @Test
+    public void streamIsSplitLikeArray() {
+        fileRepository.write(new File(folder, "array.bin"), content);
+        long storedBytes = fileRepository.getStatistics().getStoredBytes();
+
+        File streamed = new File(folder, "streamed.bin");
+        fileRepository.write(streamed, new ByteArrayInputStream(content));
+
+        Assertions.assertThat(fileRepository.getStatistics().getStoredBytes()).isEqualTo(storedBytes);
+        Assertions.assertThat(fileRepository.read(streamed)).isEqualTo(content);
+    }
+
+    @Test
+    public void streamIsStagedAndAppended() {
+        File file = new File(folder, "streamIsStagedAndAppended.bin");
+        int half = content.length / 2;
+
+        fileRepository.stage(file, new ByteArrayInputStream(Arrays.copyOfRange(content, 0, half))).commit();
+        fileRepository.stageAppend(file, new ByteArrayInputStream(Arrays.copyOfRange(content, half, content.length))).commit();
+
+        Assertions.assertThat(fileRepository.read(file)).isEqualTo(content);
+    }
+
+    @Test
+    public void manifestWithInvalidHashIsNotRead() throws Exception {
+        File file = new File(folder, "invalidHash.bin");
+        Files.write(Paths.get(file.getPath()), "dedup-manifest 1\n../../files/invalidHash.bin 10".getBytes());
+
+        Assertions.assertThatThrownBy(() -> fileRepository.read(file)).
+                isInstanceOf(UncheckedIOException.class).
+                hasMessageContaining("is corrupted");
+    }
+
+    @Test
+    public void corruptedChunkIsNotRead() throws Exception {
+        File file = new File(folder, "corruptedChunk.bin");
+        fileRepository.write(file, content);
+        try (Stream<Path> chunks = Files.walk(chunkDirectory)) {
+            Path chunk = chunks.filter(Files::isRegularFile).findFirst().get();
+            byte[] chunkContent = Files.readAllBytes(chunk);
+            chunkContent[0] ^= 1;
+            Files.write(chunk, chunkContent);
+        }
+
+        Assertions.assertThatThrownBy(() -> fileRepository.read(file)).
+                isInstanceOf(UncheckedIOException.class).
+                hasMessageContaining("is corrupted");
+    }
+
+    @Test
+    public void fileWhichIsNotManifestIsNotRead() throws Exception {
+        File file = new File(folder, "notManifest.txt");
+        Files.write(Paths.get(file.getPath()), "not a manifest".getBytes());
+
+        Assertions.assertThatThrownBy(() -> fileRepository.read(file)).
+                isInstanceOf(UncheckedIOException.class).
+                hasMessageContaining("is not a deduplication manifest");
+    }
+
+    @Test
+    public void stagedContentIsVisibleOnceCommitted() {
+        File file = new File(folder, "staged.bin");
+
+        fileRepository.stage(file, content).commit();
+
+        Assertions.assertThat(fileRepository.read(file)).isEqualTo(content);
+    }
+}
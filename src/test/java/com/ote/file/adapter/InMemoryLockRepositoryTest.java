@@ -0,0 +1,52 @@
+package com.ote.file.adapter;
+
+import com.ote.file.api.model.File;
+import com.ote.file.api.model.Folder;
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+import static com.ote.file.spi.ILockRepository.FileLock;
+import static com.ote.file.spi.ILockRepository.KeyFileLock;
+import static com.ote.file.spi.IUserRightRepository.Privilege;
+
+public class InMemoryLockRepositoryTest {
+
+    private final InMemoryLockRepository lockRepository = new InMemoryLockRepository();
+
+    private final KeyFileLock key = new KeyFileLock("application", "perimeter", new File(new Folder(".", "target"), "test.txt"));
+
+    @Test
+    public void eachReaderReleasesItsOwnHold() {
+        FileLock reader1 = new FileLock(key, "user1", Privilege.READ);
+        FileLock reader2 = new FileLock(key, "user2", Privilege.READ);
+
+        lockRepository.lockFile(reader1);
+        lockRepository.lockFile(reader2);
+        lockRepository.lockFile(reader2);
+        Assertions.assertThat(lockRepository.getReaderCount(key)).isEqualTo(3);
+
+        lockRepository.unlockFile(reader1);
+        Assertions.assertThat(lockRepository.getReaderCount(key)).isEqualTo(2);
+        Assertions.assertThat(lockRepository.getFileLock(key)).contains(reader2);
+
+        lockRepository.unlockFile(reader2);
+        Assertions.assertThat(lockRepository.getFileLock(key)).contains(reader2);
+
+        lockRepository.unlockFile(reader2);
+        Assertions.assertThat(lockRepository.getFileLock(key)).isNotPresent();
+    }
+
+    @Test
+    public void releasingLockNotHeldHasNoEffect() {
+        FileLock writer = new FileLock(key, "user1", Privilege.WRITE);
+
+        lockRepository.lockFile(writer);
+        lockRepository.unlockFile(new FileLock(key, "user2", Privilege.WRITE));
+        lockRepository.unlockFile(new FileLock(key, "user1", Privilege.READ));
+
+        Assertions.assertThat(lockRepository.getFileLock(key)).contains(writer);
+
+        lockRepository.unlockFile(writer);
+        Assertions.assertThat(lockRepository.getFileLock(key)).isNotPresent();
+    }
+}
@@ -0,0 +1,327 @@
+package com.ote.file.adapter;
+
+import com.ote.file.Utils;
+import com.ote.file.api.model.File;
+import com.ote.file.api.model.Folder;
+import com.ote.file.api.model.Page;
+import com.ote.file.spi.BufferPool;
+import com.ote.file.spi.IFileRepository;
+import org.assertj.core.api.Assertions;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+public class LocalFileRepositoryTest {
+
+    private static final String APPLICATION = "application";
+    private static final String PERIMETER = "perimeter";
+
+    private final Folder folder = new Folder(".", "target", "testLocalFileRepository");
+
+    private final BufferPool bufferPool = new BufferPool(4 * 1024, 1024 * 1024, 4);
+
+    private LocalFileRepository fileRepository;
+
+    @Before
+    public void init() throws Exception {
+        Files.createDirectories(Paths.get(folder.getPath()));
+        fileRepository = new LocalFileRepository(LocalFileRepository.DefaultMappingThreshold, bufferPool);
+        fileRepository.addFolder(APPLICATION, PERIMETER, folder);
+    }
+
+    @After
+    public void noBufferLeak() {
+        Assertions.assertThat(bufferPool.getOutstandingCount()).isZero();
+    }
+
+    @Test
+    public void buffersAreReused() {
+        File file = new File(folder, "buffersAreReused.bin");
+        byte[] content = new byte[3 * IFileRepository.ChunkSize + 17];
+        new Random(42).nextBytes(content);
+
+        fileRepository.write(file, content);
+        long allocationCount = bufferPool.getAllocationCount();
+        for (int i = 0; i < 10; i++) {
+            fileRepository.write(file, content);
+            fileRepository.append(file, content);
+            fileRepository.write(file, new ByteArrayInputStream(content));
+            Assertions.assertThat(fileRepository.read(file)).isEqualTo(content);
+        }
+
+        Assertions.assertThat(bufferPool.getAllocationCount()).isEqualTo(allocationCount);
+    }
+
+    @Test
+    public void folderAndFileAreFound() {
+        File file = new File(folder, "found.txt");
+        fileRepository.write(file, "found".getBytes());
+
+        Assertions.assertThat(fileRepository.isFound(APPLICATION, PERIMETER, folder)).isTrue();
+        Assertions.assertThat(fileRepository.isFound(APPLICATION, PERIMETER, file)).isTrue();
+        Assertions.assertThat(fileRepository.isFound(APPLICATION, PERIMETER, new File(folder, "notFound.txt"))).isFalse();
+        Assertions.assertThat(fileRepository.isFound(APPLICATION, "another perimeter", folder)).isFalse();
+    }
+
+    @Test
+    public void writeThenReadOK() {
+        File file = new File(folder, "writeThenReadOK.txt");
+        byte[] expected = "writeThenReadOK".getBytes();
+
+        fileRepository.write(file, expected);
+
+        Assertions.assertThat(fileRepository.read(file)).isEqualTo(expected);
+    }
+
+    @Test
+    public void appendKeepsBinaryContent() {
+        File file = new File(folder, "appendKeepsBinaryContent.bin");
+        byte[] first = "héllo ".getBytes(StandardCharsets.UTF_8);
+        byte[] second = new byte[]{(byte) 0xFF, 0x00, (byte) 0x80, 0x7F};
+
+        fileRepository.write(file, first);
+        fileRepository.append(file, second);
+
+        byte[] expected = new byte[first.length + second.length];
+        System.arraycopy(first, 0, expected, 0, first.length);
+        System.arraycopy(second, 0, expected, first.length, second.length);
+        Assertions.assertThat(fileRepository.read(file)).isEqualTo(expected);
+    }
+
+    @Test
+    public void manySmallAppendsOK() {
+        File file = new File(folder, "manySmallAppendsOK.log");
+        fileRepository.write(file, new byte[0]);
+
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            String line = "line " + i + "\n";
+            fileRepository.append(file, line.getBytes());
+            expected.append(line);
+        }
+
+        Assertions.assertThat(fileRepository.read(file)).isEqualTo(expected.toString().getBytes());
+    }
+
+    @Test
+    public void streamWriteAppendAndReadOK() throws Exception {
+        File file = new File(folder, "streamWriteAppendAndReadOK.txt");
+        String first = Utils.createDataSize(3 * LocalFileRepository.ChunkSize + 1);
+        String second = "end";
+
+        fileRepository.write(file, new ByteArrayInputStream(first.getBytes()));
+        fileRepository.append(file, new ByteArrayInputStream(second.getBytes()));
+
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        try (InputStream inputStream = fileRepository.openInputStream(file)) {
+            byte[] buffer = new byte[1024];
+            int length;
+            while ((length = inputStream.read(buffer)) > 0) {
+                actual.write(buffer, 0, length);
+            }
+        }
+        Assertions.assertThat(actual.toByteArray()).isEqualTo((first + second).getBytes());
+    }
+
+    @Test
+    public void largeFileIsMappedOK() throws Exception {
+        LocalFileRepository mappingRepository = new LocalFileRepository(16, bufferPool);
+        File file = new File(folder, "largeFileIsMappedOK.txt");
+        String expected = Utils.createDataSize(1024) + "end";
+
+        mappingRepository.write(file, expected.getBytes());
+
+        Assertions.assertThat(mappingRepository.read(file)).isEqualTo(expected.getBytes());
+        try (InputStream inputStream = mappingRepository.openInputStream(file)) {
+            Assertions.assertThat(inputStream.skip(1024)).isEqualTo(1024);
+            byte[] actual = new byte[3];
+            Assertions.assertThat(inputStream.read(actual)).isEqualTo(3);
+            Assertions.assertThat(actual).isEqualTo("end".getBytes());
+            Assertions.assertThat(inputStream.read()).isEqualTo(-1);
+        }
+    }
+
+    @Test
+    public void listingIsRefreshedOnChange() throws Exception {
+        Folder listedFolder = new Folder(folder, "listingIsRefreshedOnChange");
+        Files.createDirectories(Paths.get(listedFolder.getPath()));
+        File created = new File(listedFolder, "created.txt");
+        File external = new File(listedFolder, "external.txt");
+        Files.deleteIfExists(Paths.get(created.getPath()));
+        Files.deleteIfExists(Paths.get(external.getPath()));
+
+        Assertions.assertThat(fileRepository.getFiles(APPLICATION, PERIMETER, listedFolder)).doesNotContain(created, external);
+
+        // files created through the repository are visible straight away
+        fileRepository.write(created, "created".getBytes());
+        Assertions.assertThat(fileRepository.isFound(APPLICATION, PERIMETER, created)).isTrue();
+
+        // files created outside the repository are visible once the directory has changed
+        Utils.saveFile(external.getPath(), "external".getBytes());
+        Files.setLastModifiedTime(Paths.get(listedFolder.getPath()), FileTime.fromMillis(System.currentTimeMillis() + 1000));
+        Assertions.assertThat(fileRepository.getFiles(APPLICATION, PERIMETER, listedFolder)).contains(created, external);
+
+        Files.delete(Paths.get(external.getPath()));
+        Files.setLastModifiedTime(Paths.get(listedFolder.getPath()), FileTime.fromMillis(System.currentTimeMillis() + 2000));
+        Assertions.assertThat(fileRepository.isFound(APPLICATION, PERIMETER, external)).isFalse();
+    }
+
+    @Test
+    public void fileEndingWithStagingSuffixIsListed() throws Exception {
+        Folder stagingFolder = new Folder(folder, "fileEndingWithStagingSuffixIsListed");
+        Files.createDirectories(Paths.get(stagingFolder.getPath()));
+        File file = new File(stagingFolder, "report.staged");
+
+        fileRepository.write(file, "report".getBytes());
+        IFileRepository.StagedFile stagedFile = fileRepository.stage(new File(stagingFolder, "pending.txt"), "pending".getBytes());
+        Files.setLastModifiedTime(Paths.get(stagingFolder.getPath()), FileTime.fromMillis(System.currentTimeMillis() + 1000));
+
+        Assertions.assertThat(fileRepository.getFiles(APPLICATION, PERIMETER, stagingFolder)).containsExactly(file);
+        Assertions.assertThat(fileRepository.isFound(APPLICATION, PERIMETER, file)).isTrue();
+        stagedFile.discard();
+    }
+
+    @Test
+    public void fileCanNotLeaveItsFolder() {
+        for (String name : Arrays.asList("../escaped.txt", "..", ".", "sub/file.txt", "")) {
+            File file = new File(folder, name);
+            Assertions.assertThatThrownBy(() -> fileRepository.write(file, "escaped".getBytes())).
+                    as(name).
+                    isInstanceOf(IllegalArgumentException.class);
+        }
+        Assertions.assertThat(Files.exists(Paths.get(folder.getParent().getPath(), "escaped.txt"))).isFalse();
+    }
+
+    @Test
+    public void listingIsKeptWhenFileIsCreatedThroughRepository() throws Exception {
+        Folder listedFolder = new Folder(folder, "listingIsKeptWhenFileIsCreatedThroughRepository");
+        Path directory = Paths.get(listedFolder.getPath());
+        Files.createDirectories(directory);
+        File created = new File(listedFolder, "created.txt");
+        File external = new File(listedFolder, "external.txt");
+        Files.deleteIfExists(Paths.get(created.getPath()));
+        Files.deleteIfExists(Paths.get(external.getPath()));
+        fileRepository.getFiles(APPLICATION, PERIMETER, listedFolder);
+
+        fileRepository.write(created, "created".getBytes());
+        // a file created outside the repository without changing the directory is only seen if the directory is listed again
+        FileTime lastModified = Files.getLastModifiedTime(directory);
+        Utils.saveFile(external.getPath(), "external".getBytes());
+        Files.setLastModifiedTime(directory, lastModified);
+
+        Assertions.assertThat(fileRepository.getFiles(APPLICATION, PERIMETER, listedFolder)).contains(created).doesNotContain(external);
+    }
+
+    @Test
+    public void stagedFileIsOnlyVisibleOnceCommitted() throws Exception {
+        Folder stagingFolder = new Folder(folder, "stagedFileIsOnlyVisibleOnceCommitted");
+        Files.createDirectories(Paths.get(stagingFolder.getPath()));
+        File committed = new File(stagingFolder, "committed.txt");
+        File discarded = new File(stagingFolder, "discarded.txt");
+        Files.deleteIfExists(Paths.get(committed.getPath()));
+        Files.deleteIfExists(Paths.get(discarded.getPath()));
+
+        IFileRepository.StagedFile stagedFile = fileRepository.stage(committed, "committed".getBytes());
+        IFileRepository.StagedFile discardedFile = fileRepository.stage(discarded, "discarded".getBytes());
+
+        // staging files are not listed
+        Files.setLastModifiedTime(Paths.get(stagingFolder.getPath()), FileTime.fromMillis(System.currentTimeMillis() + 1000));
+        Assertions.assertThat(fileRepository.getFiles(APPLICATION, PERIMETER, stagingFolder)).isEmpty();
+
+        stagedFile.commit();
+        discardedFile.discard();
+
+        Assertions.assertThat(fileRepository.read(committed)).isEqualTo("committed".getBytes());
+        Assertions.assertThat(fileRepository.isFound(APPLICATION, PERIMETER, committed)).isTrue();
+        try (Stream<Path> paths = Files.list(Paths.get(stagingFolder.getPath()))) {
+            Assertions.assertThat(paths.map(p -> p.getFileName().toString())).containsExactly("committed.txt");
+        }
+    }
+
+    @Test
+    public void stagedAppendKeepsPreviousVersionForOpenedReaders() throws Exception {
+        File file = new File(folder, "stagedAppend.txt");
+        fileRepository.write(file, "previous".getBytes());
+
+        IFileRepository.StagedFile stagedFile = fileRepository.stageAppend(file, new ByteArrayInputStream(" appended".getBytes()));
+        Assertions.assertThat(fileRepository.read(file)).isEqualTo("previous".getBytes());
+
+        try (InputStream inputStream = fileRepository.openInputStream(file)) {
+            stagedFile.commit();
+
+            // the stream opened before the commit still reads the previous version
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            byte[] buffer = new byte[16];
+            int count;
+            while ((count = inputStream.read(buffer)) >= 0) {
+                outputStream.write(buffer, 0, count);
+            }
+            Assertions.assertThat(outputStream.toByteArray()).isEqualTo("previous".getBytes());
+        }
+        Assertions.assertThat(fileRepository.read(file)).isEqualTo("previous appended".getBytes());
+    }
+
+    @Test
+    public void filesArePagedByName() throws Exception {
+        Folder pagedFolder = new Folder(folder, "filesArePagedByName");
+        Files.createDirectories(Paths.get(pagedFolder.getPath()));
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            String name = String.format("%02d.txt", i);
+            Utils.saveFile(new File(pagedFolder, name).getPath(), name.getBytes());
+            expected.add(name);
+        }
+
+        try (Stream<File> files = fileRepository.streamFiles(APPLICATION, PERIMETER, pagedFolder)) {
+            Assertions.assertThat(files.count()).isEqualTo(expected.size());
+        }
+
+        List<String> actual = new ArrayList<>();
+        List<Integer> pageSizes = new ArrayList<>();
+        String continuationToken = null;
+        do {
+            Page<File> page = fileRepository.getFiles(APPLICATION, PERIMETER, pagedFolder, 10, continuationToken);
+            page.getItems().forEach(file -> actual.add(file.getName()));
+            pageSizes.add(page.getItems().size());
+            continuationToken = page.getContinuationToken();
+        } while (continuationToken != null);
+
+        Assertions.assertThat(actual).containsExactlyElementsOf(expected);
+        Assertions.assertThat(pageSizes).containsExactly(10, 10, 5);
+
+        // the page resumes after the token, even when no file has this name anymore
+        Page<File> page = fileRepository.getFiles(APPLICATION, PERIMETER, pagedFolder, 3, "09.txt.removed");
+        Assertions.assertThat(page.getItems()).extracting(File::getName).containsExactly("10.txt", "11.txt", "12.txt");
+        Assertions.assertThat(page.getContinuationToken()).isEqualTo("12.txt");
+    }
+
+    @Test
+    public void rangeIsReadFromOffset() {
+        File file = new File(folder, "rangeIsReadFromOffset.bin");
+        byte[] content = new byte[2 * IFileRepository.ChunkSize + 100];
+        new Random(7).nextBytes(content);
+        fileRepository.write(file, content);
+
+        Assertions.assertThat(fileRepository.read(file, 0, 10)).isEqualTo(Arrays.copyOfRange(content, 0, 10));
+        Assertions.assertThat(fileRepository.read(file, 5, IFileRepository.ChunkSize + 10)).
+                isEqualTo(Arrays.copyOfRange(content, 5, IFileRepository.ChunkSize + 15));
+        // the range is truncated at the end of the file
+        Assertions.assertThat(fileRepository.read(file, content.length - 50, 1000)).
+                isEqualTo(Arrays.copyOfRange(content, content.length - 50, content.length));
+        Assertions.assertThat(fileRepository.read(file, content.length + 1, 10)).isEmpty();
+    }
+}
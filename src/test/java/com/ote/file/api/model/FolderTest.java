@@ -0,0 +1,62 @@
+package com.ote.file.api.model;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+public class FolderTest {
+
+    @Test
+    public void foldersWithSamePathAreEqual() {
+        Folder folder = new Folder(".", "target", "test");
+
+        Assertions.assertThat(new Folder("./target/test")).isEqualTo(folder);
+        Assertions.assertThat(new Folder("./target/test").hashCode()).isEqualTo(folder.hashCode());
+        Assertions.assertThat(new Folder(".\\target\\test")).isEqualTo(folder);
+        Assertions.assertThat(new Folder(new Folder(".", "target"), "test")).isEqualTo(folder);
+        Assertions.assertThat(new Folder(".", "target")).isNotEqualTo(folder);
+        Assertions.assertThat(folder.getPath()).isEqualTo("./target/test");
+        Assertions.assertThat(folder.toString()).isEqualTo("./target/test");
+    }
+
+    @Test
+    public void folderIsImmutable() {
+        String[] segments = {".", "target"};
+        Folder folder = new Folder(segments);
+
+        segments[1] = "modified";
+        folder.getSegments()[1] = "modified";
+
+        Assertions.assertThat(folder.getPath()).isEqualTo("./target");
+    }
+
+    @Test
+    public void parentOfFolder() {
+        Folder parent = new Folder(".", "target");
+        Folder folder = new Folder(parent, "test");
+
+        Assertions.assertThat(folder.getParent()).isSameAs(parent);
+        Assertions.assertThat(folder.getName()).isEqualTo("test");
+        Assertions.assertThat(new Folder("./target/test").getParent()).isEqualTo(parent);
+        Assertions.assertThat(new Folder(".").getParent()).isNull();
+    }
+
+    @Test
+    public void internedFoldersAndFilesAreSame() {
+        Folder folder = new Folder(".", "target").intern();
+        File file = new File(folder, "test.txt").intern();
+
+        Assertions.assertThat(new Folder("./target").intern()).isSameAs(folder);
+        Assertions.assertThat(new File(new Folder("./target"), "test.txt").intern()).isSameAs(file);
+    }
+
+    @Test
+    public void filesWithSameFolderAndNameAreEqual() {
+        File file = new File(new Folder(".", "target"), "test.txt");
+
+        Assertions.assertThat(new File(new Folder("./target"), "test.txt")).isEqualTo(file);
+        Assertions.assertThat(new File(new Folder("./target"), "test.txt").hashCode()).isEqualTo(file.hashCode());
+        Assertions.assertThat(new File(new Folder("./target"), "other.txt")).isNotEqualTo(file);
+        Assertions.assertThat(file.getPath()).isEqualTo("./target/test.txt");
+        Assertions.assertThat(new File(null, "test.txt").getPath()).isEqualTo("test.txt");
+    }
+}
@@ -0,0 +1,134 @@
+package com.ote.file.benchmark;
+
+import com.ote.file.adapter.LocalFileRepository;
+import com.ote.file.api.model.File;
+import com.ote.file.api.model.Folder;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Compare LocalFileRepository with plain java.nio.file.Files calls
+ * Run it with: mvn test-compile && java -cp "target/test-classes:target/classes:$(mvn -q dependency:build-classpath -Dmdep.outputFile=/dev/stdout)" com.ote.file.benchmark.LocalFileRepositoryBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LocalFileRepositoryBenchmark {
+
+    private static final String APPLICATION = "application";
+    private static final String PERIMETER = "perimeter";
+
+    @Param({"4096", "16777216"})
+    private int fileSize;
+
+    @Param({"1000"})
+    private int fileCount;
+
+    private final Folder folder = new Folder(".", "target", "benchmark");
+
+    private final LocalFileRepository fileRepository = new LocalFileRepository();
+
+    private File file;
+
+    private File appendedFile;
+
+    private byte[] line;
+
+    @Setup
+    public void setUp() throws IOException {
+        Path directory = Paths.get(folder.getPath());
+        Files.createDirectories(directory);
+        fileRepository.addFolder(APPLICATION, PERIMETER, folder);
+
+        byte[] content = new byte[fileSize];
+        ThreadLocalRandom.current().nextBytes(content);
+        file = new File(folder, "content.bin");
+        Files.write(Paths.get(file.getPath()), content);
+        for (int i = 0; i < fileCount; i++) {
+            Files.write(directory.resolve("file-" + i + ".txt"), new byte[0]);
+        }
+
+        appendedFile = new File(folder, "appended.log");
+        Files.write(Paths.get(appendedFile.getPath()), new byte[0]);
+        line = "a small line of log appended again and again\n".getBytes();
+    }
+
+    @Benchmark
+    public byte[] readRepository() {
+        return fileRepository.read(file);
+    }
+
+    @Benchmark
+    public byte[] readFiles() throws IOException {
+        return Files.readAllBytes(Paths.get(file.getPath()));
+    }
+
+    @Benchmark
+    public void streamRepository(Blackhole blackhole) throws IOException {
+        try (InputStream inputStream = fileRepository.openInputStream(file)) {
+            consume(inputStream, blackhole);
+        }
+    }
+
+    @Benchmark
+    public void streamFiles(Blackhole blackhole) throws IOException {
+        try (InputStream inputStream = Files.newInputStream(Paths.get(file.getPath()))) {
+            consume(inputStream, blackhole);
+        }
+    }
+
+    @Benchmark
+    public void appendRepository() {
+        fileRepository.append(appendedFile, line);
+    }
+
+    @Benchmark
+    public void appendFiles() throws IOException {
+        Files.write(Paths.get(appendedFile.getPath()), line, StandardOpenOption.APPEND);
+    }
+
+    @Benchmark
+    public boolean isFoundRepository() {
+        return fileRepository.isFound(APPLICATION, PERIMETER, new File(folder, "file-500.txt"));
+    }
+
+    @Benchmark
+    public boolean isFoundFiles() throws IOException {
+        File expected = new File(folder, "file-500.txt");
+        try (Stream<Path> paths = Files.list(Paths.get(folder.getPath()))) {
+            Set<File> files = paths.map(p -> new File(folder, p.getFileName().toString())).collect(Collectors.toSet());
+            return files.contains(expected);
+        }
+    }
+
+    private static void consume(InputStream inputStream, Blackhole blackhole) throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        int length;
+        while ((length = inputStream.read(buffer)) > 0) {
+            blackhole.consume(length);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().
+                include(LocalFileRepositoryBenchmark.class.getSimpleName()).
+                build()).run();
+    }
+}
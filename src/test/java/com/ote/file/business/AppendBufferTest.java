@@ -0,0 +1,235 @@
+package com.ote.file.business;
+
+import com.ote.file.api.IFileService;
+import com.ote.file.api.ServiceProvider;
+import com.ote.file.api.exception.FileNotFoundException;
+import com.ote.file.api.model.File;
+import com.ote.file.api.model.Folder;
+import com.ote.file.mock.LockRepositoryMock;
+import com.ote.file.spi.*;
+import org.assertj.core.api.Assertions;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static com.ote.file.business.FileServiceOptions.AppendDurability;
+import static com.ote.file.spi.IUserRightRepository.Privilege;
+
+public class AppendBufferTest {
+
+    private static final String USER = "a user";
+    private static final String APPLICATION = "an application";
+    private static final String PERIMETER = "a perimeter";
+
+    @Mock
+    private IUserRepository userRepository;
+
+    @Mock
+    private IApplicationRepository applicationRepository;
+
+    @Mock
+    private IUserRightRepository userRightRepository;
+
+    @Mock
+    private IFileRepository fileRepository;
+
+    private ILockRepository lockRepository = new LockRepositoryMock();
+
+    private final File file = new File(new Folder(".", "target"), "file.log");
+
+    private AutoCloseable mocks;
+
+    @Before
+    public void init() {
+        mocks = MockitoAnnotations.openMocks(this);
+
+        Mockito.when(userRepository.isFound(Mockito.anyString())).thenReturn(true);
+        Mockito.when(applicationRepository.isFound(Mockito.anyString())).thenReturn(true);
+        Mockito.when(applicationRepository.isFound(Mockito.anyString(), Mockito.anyString())).thenReturn(true);
+        Mockito.when(userRightRepository.isAuthorized(Mockito.anyString(), Mockito.anyString(), Mockito.anyString(), Mockito.any(Privilege.class))).thenCallRealMethod();
+        Mockito.when(userRightRepository.getPrivileges(Mockito.anyString(), Mockito.anyString(), Mockito.anyString())).thenReturn(EnumSet.of(Privilege.READ, Privilege.WRITE));
+        Mockito.when(fileRepository.isFound(Mockito.anyString(), Mockito.anyString(), Mockito.any(Folder.class))).thenReturn(true);
+        Mockito.when(fileRepository.isFound(Mockito.anyString(), Mockito.anyString(), Mockito.any(File.class))).thenReturn(true);
+    }
+
+    @After
+    public void close() throws Exception {
+        mocks.close();
+    }
+
+    private IFileService createFileService(int maximumBytes, long maximumDelay, AppendDurability durability) {
+        FileServiceOptions options = FileServiceOptions.builder().
+                appendBufferMaximumBytes(maximumBytes).
+                appendBufferMaximumDelay(maximumDelay).
+                appendDurability(durability).
+                build();
+        return ServiceProvider.getInstance().
+                getFileServiceFactory().
+                createFileService(userRepository, applicationRepository, userRightRepository, fileRepository, lockRepository, 1000, TimeUnit.MILLISECONDS, options);
+    }
+
+    @Test
+    public void appendsAreCoalescedUntilClose() throws Exception {
+        try (IFileService fileService = createFileService(1024 * 1024, TimeUnit.HOURS.toMillis(1), AppendDurability.ACK_ON_BUFFER)) {
+            for (int i = 0; i < 100; i++) {
+                fileService.append(USER, APPLICATION, PERIMETER, file, new byte[]{(byte) i}, true);
+            }
+            Mockito.verify(fileRepository, Mockito.never()).append(Mockito.any(File.class), Mockito.any(byte[].class));
+        }
+
+        byte[] expected = new byte[100];
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = (byte) i;
+        }
+        Mockito.verify(fileRepository).append(file, expected);
+    }
+
+    @Test
+    public void fullBufferIsFlushed() throws Exception {
+        try (IFileService fileService = createFileService(10, TimeUnit.HOURS.toMillis(1), AppendDurability.ACK_ON_BUFFER)) {
+            fileService.append(USER, APPLICATION, PERIMETER, file, "aaaa".getBytes(), true);
+            fileService.append(USER, APPLICATION, PERIMETER, file, "bbbb".getBytes(), true);
+            // the third content would overflow the buffer, which is flushed first
+            fileService.append(USER, APPLICATION, PERIMETER, file, "cccc".getBytes(), true);
+
+            Mockito.verify(fileRepository).append(file, "aaaabbbb".getBytes());
+        }
+        Mockito.verify(fileRepository).append(file, "cccc".getBytes());
+    }
+
+    @Test
+    public void sequentialAppendsAreNotDelayedWithAckOnFlush() throws Exception {
+        try (IFileService fileService = createFileService(1024, TimeUnit.HOURS.toMillis(1), AppendDurability.ACK_ON_FLUSH)) {
+            CompletableFuture.runAsync(() -> {
+                for (int i = 0; i < 10; i++) {
+                    append(fileService, "content".getBytes());
+                }
+            }).get(5, TimeUnit.SECONDS);
+        }
+
+        Mockito.verify(fileRepository, Mockito.times(10)).append(file, "content".getBytes());
+    }
+
+    @Test
+    public void concurrentAppendsAreGroupCommittedWithAckOnFlush() throws Exception {
+        CountDownLatch flushing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Mockito.doAnswer(invocation -> {
+            flushing.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return null;
+        }).doNothing().when(fileRepository).append(Mockito.any(File.class), Mockito.any(byte[].class));
+
+        try (IFileService fileService = createFileService(1024, TimeUnit.HOURS.toMillis(1), AppendDurability.ACK_ON_FLUSH)) {
+            CompletableFuture<Void> first = CompletableFuture.runAsync(() -> append(fileService, "a".getBytes()));
+            flushing.await(5, TimeUnit.SECONDS);
+
+            // the appends arriving during the first flush are written together by the next one
+            List<CompletableFuture<Void>> next = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                next.add(CompletableFuture.runAsync(() -> append(fileService, "b".getBytes())));
+            }
+            Thread.sleep(100);
+            release.countDown();
+
+            first.get(5, TimeUnit.SECONDS);
+            CompletableFuture.allOf(next.toArray(new CompletableFuture[0])).get(5, TimeUnit.SECONDS);
+        }
+
+        Mockito.verify(fileRepository).append(file, "a".getBytes());
+        Mockito.verify(fileRepository).append(file, "bbbbb".getBytes());
+    }
+
+    @Test
+    public void appendReturnsOnceFlushedWithAckOnFlush() throws Exception {
+        try (IFileService fileService = createFileService(1024, 10, AppendDurability.ACK_ON_FLUSH)) {
+            fileService.append(USER, APPLICATION, PERIMETER, file, "content".getBytes(), true);
+
+            Mockito.verify(fileRepository).append(file, "content".getBytes());
+        }
+    }
+
+    @Test
+    public void flushFailureIsReportedWithAckOnFlush() {
+        Mockito.doThrow(new IllegalStateException("disk full")).when(fileRepository).append(Mockito.any(File.class), Mockito.any(byte[].class));
+        try (IFileService fileService = createFileService(1024, 10, AppendDurability.ACK_ON_FLUSH)) {
+            Assertions.assertThatThrownBy(() -> fileService.append(USER, APPLICATION, PERIMETER, file, "content".getBytes(), true)).
+                    isInstanceOf(IllegalStateException.class).
+                    hasMessage("disk full");
+        }
+    }
+
+    @Test
+    public void failedFlushIsRetriedWithAckOnBuffer() throws Exception {
+        Mockito.doThrow(new IllegalStateException("disk full")).doNothing().when(fileRepository).append(Mockito.any(File.class), Mockito.any(byte[].class));
+        try (IFileService fileService = createFileService(1024, 10, AppendDurability.ACK_ON_BUFFER)) {
+            fileService.append(USER, APPLICATION, PERIMETER, file, "content".getBytes(), true);
+
+            Mockito.verify(fileRepository, Mockito.timeout(5000).times(2)).append(file, "content".getBytes());
+        }
+    }
+
+    @Test
+    public void failedFlushIsRetriedBoundedTimesWithAckOnBuffer() throws Exception {
+        Mockito.doThrow(new IllegalStateException("disk full")).when(fileRepository).append(Mockito.any(File.class), Mockito.any(byte[].class));
+        IFileService fileService = createFileService(1024, 10, AppendDurability.ACK_ON_BUFFER);
+
+        fileService.append(USER, APPLICATION, PERIMETER, file, "content".getBytes(), true);
+
+        // the first flush and 3 retries, then the buffer waits for the next append
+        Mockito.verify(fileRepository, Mockito.timeout(5000).times(4)).append(file, "content".getBytes());
+        Mockito.verify(fileRepository, Mockito.after(200).times(4)).append(Mockito.any(File.class), Mockito.any(byte[].class));
+
+        Assertions.assertThatThrownBy(() -> fileService.append(USER, APPLICATION, PERIMETER, file, "next".getBytes(), true)).
+                isInstanceOf(IllegalStateException.class).
+                hasMessage("disk full");
+        Assertions.assertThatThrownBy(fileService::close).
+                isInstanceOf(IllegalStateException.class).
+                hasRootCauseInstanceOf(IllegalStateException.class);
+        // the rejected content has not been buffered
+        Mockito.verify(fileRepository, Mockito.never()).append(file, "contentnext".getBytes());
+    }
+
+    @Test
+    public void removedFileIsNotCreatedWhenCreationIsNotAllowed() throws Exception {
+        // the file is found when the append is checked, but not anymore when it is flushed
+        Mockito.when(fileRepository.isFound(APPLICATION, PERIMETER, file)).thenReturn(true, false);
+        try (IFileService fileService = createFileService(1024, 10, AppendDurability.ACK_ON_FLUSH)) {
+            Assertions.assertThatThrownBy(() -> fileService.append(USER, APPLICATION, PERIMETER, file, "content".getBytes(), false)).
+                    isInstanceOf(FileNotFoundException.class);
+        }
+
+        Mockito.verify(fileRepository, Mockito.never()).write(Mockito.any(File.class), Mockito.any(byte[].class));
+    }
+
+    @Test
+    public void bufferedAppendsAreFlushedBeforeSave() throws Exception {
+        try (IFileService fileService = createFileService(1024, TimeUnit.HOURS.toMillis(1), AppendDurability.ACK_ON_BUFFER)) {
+            fileService.append(USER, APPLICATION, PERIMETER, file, "appended".getBytes(), true);
+            fileService.save(USER, APPLICATION, PERIMETER, file, "saved".getBytes(), true);
+        }
+
+        InOrder inOrder = Mockito.inOrder(fileRepository);
+        inOrder.verify(fileRepository).append(file, "appended".getBytes());
+        inOrder.verify(fileRepository).write(file, "saved".getBytes());
+    }
+
+    private void append(IFileService fileService, byte[] content) {
+        try {
+            fileService.append(USER, APPLICATION, PERIMETER, file, content, true);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.ote.file.business;
+
+import com.ote.file.api.IAsyncFileService;
+import com.ote.file.api.IFileService;
+import com.ote.file.api.ServiceProvider;
+import com.ote.file.api.exception.FileNotFoundException;
+import com.ote.file.api.exception.LockException;
+import com.ote.file.api.model.File;
+import com.ote.file.api.model.Folder;
+import org.assertj.core.api.Assertions;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class AsyncFileServiceTest {
+
+    private static final String USER = "a user";
+    private static final String APPLICATION = "an application";
+    private static final String PERIMETER = "a perimeter";
+
+    @Mock
+    private IFileService fileService;
+
+    private ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    private IAsyncFileService asyncFileService;
+
+    private final File file = new File(new Folder(".", "target"), "async.txt");
+
+    private AutoCloseable mocks;
+
+    @Before
+    public void init() {
+        mocks = MockitoAnnotations.openMocks(this);
+
+        asyncFileService = ServiceProvider.getInstance().
+                getFileServiceFactory().
+                createAsyncFileService(fileService, executor);
+    }
+
+    @After
+    public void shutdown() throws Exception {
+        executor.shutdownNow();
+        mocks.close();
+    }
+
+    @Test
+    public void readDoesNotBlockTheCaller() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        Mockito.when(fileService.read(USER, APPLICATION, PERIMETER, file)).thenAnswer(invocation -> {
+            latch.await();
+            return "async".getBytes();
+        });
+
+        CompletableFuture<byte[]> future = asyncFileService.read(USER, APPLICATION, PERIMETER, file);
+        Assertions.assertThat(future).isNotDone();
+
+        latch.countDown();
+        Assertions.assertThat(future.get(5, TimeUnit.SECONDS)).isEqualTo("async".getBytes());
+    }
+
+    @Test
+    public void checkedExceptionCompletesExceptionally() throws Exception {
+        Mockito.when(fileService.read(USER, APPLICATION, PERIMETER, file)).thenThrow(new FileNotFoundException(APPLICATION, PERIMETER, file));
+
+        Assertions.assertThatThrownBy(() -> asyncFileService.read(USER, APPLICATION, PERIMETER, file).get(5, TimeUnit.SECONDS)).
+                isInstanceOf(ExecutionException.class).
+                hasCauseInstanceOf(FileNotFoundException.class);
+    }
+
+    @Test
+    public void saveCompletesExceptionallyOnLockConflict() throws Exception {
+        Mockito.doThrow(new LockException(USER, APPLICATION, PERIMETER, "write", file, "another user")).when(fileService).save(USER, APPLICATION, PERIMETER, file, "content".getBytes(), true);
+
+        CompletableFuture<Void> future = asyncFileService.save(USER, APPLICATION, PERIMETER, file, "content".getBytes(), true);
+
+        Assertions.assertThatThrownBy(() -> future.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(LockException.class);
+    }
+
+    @Test
+    public void rejectedTaskCompletesExceptionally() {
+        executor.shutdown();
+
+        Assertions.assertThat(asyncFileService.getFiles(USER, APPLICATION, PERIMETER)).isCompletedExceptionally();
+    }
+
+    @Test
+    public void virtualThreadsServeManyBlockedCalls() throws Exception {
+        IAsyncFileService virtualAsyncFileService = ServiceProvider.getInstance().
+                getFileServiceFactory().
+                createAsyncFileService(fileService);
+
+        // every call blocks until all of them are started, which would require as many platform threads
+        int count = 10_000;
+        CountDownLatch started = new CountDownLatch(count);
+        AtomicInteger virtualThreads = new AtomicInteger();
+        Mockito.when(fileService.read(USER, APPLICATION, PERIMETER, file)).thenAnswer(invocation -> {
+            if (Thread.currentThread().isVirtual()) {
+                virtualThreads.incrementAndGet();
+            }
+            started.countDown();
+            started.await();
+            return "virtual".getBytes();
+        });
+
+        List<CompletableFuture<byte[]>> futures = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            futures.add(virtualAsyncFileService.read(USER, APPLICATION, PERIMETER, file));
+        }
+
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(30, TimeUnit.SECONDS);
+        Assertions.assertThat(virtualThreads.get()).isEqualTo(count);
+    }
+}
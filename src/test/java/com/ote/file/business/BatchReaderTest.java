@@ -0,0 +1,153 @@
+package com.ote.file.business;
+
+import com.ote.file.api.IFileService;
+import com.ote.file.api.ServiceProvider;
+import com.ote.file.api.exception.FileNotFoundException;
+import com.ote.file.api.model.File;
+import com.ote.file.api.model.Folder;
+import com.ote.file.mock.LockRepositoryMock;
+import com.ote.file.spi.*;
+import io.vavr.control.Try;
+import org.assertj.core.api.Assertions;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static com.ote.file.spi.ILockRepository.KeyFileLock;
+import static com.ote.file.spi.IUserRightRepository.Privilege;
+
+public class BatchReaderTest {
+
+    private static final String USER = "a user";
+    private static final String APPLICATION = "an application";
+    private static final String PERIMETER = "a perimeter";
+
+    @Mock
+    private IUserRepository userRepository;
+
+    @Mock
+    private IApplicationRepository applicationRepository;
+
+    @Mock
+    private IUserRightRepository userRightRepository;
+
+    @Mock
+    private IFileRepository fileRepository;
+
+    @Spy
+    private ILockRepository lockRepository = new LockRepositoryMock();
+
+    private ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    private IFileService fileService;
+
+    private final Folder folder = new Folder(".", "target");
+
+    private AutoCloseable mocks;
+
+    @Before
+    public void init() {
+        mocks = MockitoAnnotations.openMocks(this);
+
+        Mockito.when(userRepository.isFound(Mockito.anyString())).thenReturn(true);
+        Mockito.when(applicationRepository.isFound(Mockito.anyString())).thenReturn(true);
+        Mockito.when(applicationRepository.isFound(Mockito.anyString(), Mockito.anyString())).thenReturn(true);
+        Mockito.when(userRightRepository.isAuthorized(Mockito.anyString(), Mockito.anyString(), Mockito.anyString(), Mockito.any(Privilege.class))).thenCallRealMethod();
+        Mockito.when(userRightRepository.getPrivileges(Mockito.anyString(), Mockito.anyString(), Mockito.anyString())).thenReturn(Collections.singleton(Privilege.READ));
+        Mockito.when(fileRepository.isFound(Mockito.anyString(), Mockito.anyString(), Mockito.any(Folder.class))).thenReturn(true);
+        Mockito.when(fileRepository.isFound(Mockito.anyString(), Mockito.anyString(), Mockito.any(File.class))).thenReturn(true);
+
+        FileServiceOptions options = FileServiceOptions.builder().executor(executor).parallelism(4).build();
+        fileService = ServiceProvider.getInstance().
+                getFileServiceFactory().
+                createFileService(userRepository, applicationRepository, userRightRepository, fileRepository, lockRepository, 1000, TimeUnit.MILLISECONDS, options);
+    }
+
+    @After
+    public void shutdown() throws Exception {
+        executor.shutdownNow();
+        mocks.close();
+    }
+
+    @Test
+    public void readAllValidatesOnce() throws Exception {
+        List<File> files = Arrays.asList(new File(folder, "a.txt"), new File(folder, "b.txt"), new File(folder, "c.txt"));
+        Mockito.when(fileRepository.read(Mockito.any(File.class))).thenAnswer(invocation -> ((File) invocation.getArgument(0)).getName().getBytes());
+
+        Map<File, Try<byte[]>> results = fileService.readAll(USER, APPLICATION, PERIMETER, files);
+
+        Assertions.assertThat(results.keySet()).containsExactlyElementsOf(files);
+        files.forEach(file -> Assertions.assertThat(results.get(file).get()).isEqualTo(file.getName().getBytes()));
+
+        Mockito.verify(userRepository, Mockito.times(1)).isFound(USER);
+        Mockito.verify(applicationRepository, Mockito.times(1)).isFound(APPLICATION);
+        Mockito.verify(userRightRepository, Mockito.times(1)).getPrivileges(USER, APPLICATION, PERIMETER);
+
+        // all the locks are released once the batch is read
+        files.forEach(file -> Assertions.assertThat(lockRepository.getFileLock(new KeyFileLock(APPLICATION, PERIMETER, file))).isNotPresent());
+    }
+
+    @Test
+    public void readAllReportsFailuresPerFile() throws Exception {
+        File found = new File(folder, "found.txt");
+        File notFound = new File(folder, "notFound.txt");
+        File failing = new File(folder, "failing.txt");
+
+        Mockito.when(fileRepository.isFound(APPLICATION, PERIMETER, notFound)).thenReturn(false);
+        Mockito.when(fileRepository.read(found)).thenReturn("found".getBytes());
+        Mockito.when(fileRepository.read(failing)).thenThrow(new IllegalStateException("disk error"));
+
+        Map<File, Try<byte[]>> results = fileService.readAll(USER, APPLICATION, PERIMETER, Arrays.asList(found, notFound, failing));
+
+        Assertions.assertThat(results.get(found).get()).isEqualTo("found".getBytes());
+        Assertions.assertThat(results.get(notFound).getCause()).isInstanceOf(FileNotFoundException.class);
+        Assertions.assertThat(results.get(failing).getCause()).isInstanceOf(IllegalStateException.class);
+        Mockito.verify(fileRepository, Mockito.never()).read(notFound);
+    }
+
+    @Test
+    public void readAllKeepsContentWhenUnlockFails() throws Exception {
+        File found = new File(folder, "found.txt");
+        File failing = new File(folder, "failing.txt");
+        Mockito.when(fileRepository.read(found)).thenReturn("found".getBytes());
+        Mockito.when(fileRepository.read(failing)).thenThrow(new IllegalStateException("disk error"));
+        Mockito.doThrow(new IllegalStateException("lock table unavailable")).when(lockRepository).unlockFile(Mockito.any(ILockRepository.FileLock.class));
+
+        Map<File, Try<byte[]>> results = fileService.readAll(USER, APPLICATION, PERIMETER, Arrays.asList(found, failing));
+
+        Assertions.assertThat(results.get(found).get()).isEqualTo("found".getBytes());
+        Assertions.assertThat(results.get(failing).getCause()).hasMessage("disk error");
+        Assertions.assertThat(results.get(failing).getCause().getSuppressed()).
+                extracting(Throwable::getMessage).
+                containsExactly("lock table unavailable");
+    }
+
+    @Test
+    public void readAllReadsInParallel() throws Exception {
+        List<File> files = Arrays.asList(new File(folder, "1.txt"), new File(folder, "2.txt"), new File(folder, "3.txt"), new File(folder, "4.txt"));
+
+        // each read waits until all of them are started, which only succeeds if they run in parallel
+        CountDownLatch started = new CountDownLatch(files.size());
+        Mockito.when(fileRepository.read(Mockito.any(File.class))).thenAnswer(invocation -> {
+            started.countDown();
+            return started.await(5, TimeUnit.SECONDS) ? "parallel".getBytes() : "sequential".getBytes();
+        });
+
+        Map<File, Try<byte[]>> results = fileService.readAll(USER, APPLICATION, PERIMETER, files);
+
+        results.values().forEach(result -> Assertions.assertThat(result.get()).isEqualTo("parallel".getBytes()));
+    }
+}
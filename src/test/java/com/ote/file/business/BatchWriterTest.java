@@ -0,0 +1,189 @@
+package com.ote.file.business;
+
+import com.ote.file.api.IFileService;
+import com.ote.file.api.ServiceProvider;
+import com.ote.file.api.exception.FileFoundException;
+import com.ote.file.api.exception.LockException;
+import com.ote.file.api.exception.PartialCommitException;
+import com.ote.file.api.model.File;
+import com.ote.file.api.model.Folder;
+import com.ote.file.mock.LockRepositoryMock;
+import com.ote.file.spi.*;
+import org.assertj.core.api.Assertions;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static com.ote.file.spi.ILockRepository.FileLock;
+import static com.ote.file.spi.ILockRepository.KeyFileLock;
+import static com.ote.file.spi.IUserRightRepository.Privilege;
+
+public class BatchWriterTest {
+
+    private static final String USER = "a user";
+    private static final String APPLICATION = "an application";
+    private static final String PERIMETER = "a perimeter";
+
+    @Mock
+    private IUserRepository userRepository;
+
+    @Mock
+    private IApplicationRepository applicationRepository;
+
+    @Mock
+    private IUserRightRepository userRightRepository;
+
+    @Mock
+    private IFileRepository fileRepository;
+
+    private ILockRepository lockRepository = new LockRepositoryMock();
+
+    private final Folder folder = new Folder(".", "target");
+
+    private final File first = new File(folder, "first.txt");
+
+    private final File second = new File(folder, "second.txt");
+
+    private final Map<File, byte[]> contents = new LinkedHashMap<>();
+
+    private AutoCloseable mocks;
+
+    @Before
+    public void init() {
+        mocks = MockitoAnnotations.openMocks(this);
+
+        Mockito.when(userRepository.isFound(Mockito.anyString())).thenReturn(true);
+        Mockito.when(applicationRepository.isFound(Mockito.anyString())).thenReturn(true);
+        Mockito.when(applicationRepository.isFound(Mockito.anyString(), Mockito.anyString())).thenReturn(true);
+        Mockito.when(userRightRepository.isAuthorized(Mockito.anyString(), Mockito.anyString(), Mockito.anyString(), Mockito.any(Privilege.class))).thenCallRealMethod();
+        Mockito.when(userRightRepository.getPrivileges(Mockito.anyString(), Mockito.anyString(), Mockito.anyString())).thenReturn(Collections.singleton(Privilege.WRITE));
+        Mockito.when(fileRepository.isFound(Mockito.anyString(), Mockito.anyString(), Mockito.any(Folder.class))).thenReturn(true);
+        Mockito.when(fileRepository.isFound(Mockito.anyString(), Mockito.anyString(), Mockito.any(File.class))).thenReturn(false);
+        Mockito.when(fileRepository.stage(Mockito.any(File.class), Mockito.any(byte[].class))).thenCallRealMethod();
+
+        contents.put(second, "second".getBytes());
+        contents.put(first, "first".getBytes());
+    }
+
+    @After
+    public void close() throws Exception {
+        mocks.close();
+    }
+
+    private IFileService createFileService(FileServiceOptions options) {
+        return ServiceProvider.getInstance().
+                getFileServiceFactory().
+                createFileService(userRepository, applicationRepository, userRightRepository, fileRepository, lockRepository, 1000, TimeUnit.MILLISECONDS, options);
+    }
+
+    @Test
+    public void saveAllOK() throws Exception {
+        createFileService(FileServiceOptions.defaults()).saveAll(USER, APPLICATION, PERIMETER, contents, false);
+
+        Mockito.verify(fileRepository).write(first, "first".getBytes());
+        Mockito.verify(fileRepository).write(second, "second".getBytes());
+        Mockito.verify(userRightRepository, Mockito.times(1)).getPrivileges(USER, APPLICATION, PERIMETER);
+        Assertions.assertThat(lockRepository.getFileLock(new KeyFileLock(APPLICATION, PERIMETER, first))).isNotPresent();
+        Assertions.assertThat(lockRepository.getFileLock(new KeyFileLock(APPLICATION, PERIMETER, second))).isNotPresent();
+    }
+
+    @Test
+    public void saveAllWritesNothingWhenOneFileIsFound() throws Exception {
+        Mockito.when(fileRepository.isFound(APPLICATION, PERIMETER, second)).thenReturn(true);
+
+        Assertions.assertThatThrownBy(() -> createFileService(FileServiceOptions.defaults()).saveAll(USER, APPLICATION, PERIMETER, contents, false)).
+                isInstanceOf(FileFoundException.class);
+
+        Mockito.verify(fileRepository, Mockito.never()).write(Mockito.any(File.class), Mockito.any(byte[].class));
+    }
+
+    @Test
+    public void saveAllWritesNothingWhenOneFileIsLocked() throws Exception {
+        lockRepository.lockFile(new FileLock(new KeyFileLock(APPLICATION, PERIMETER, second), "another user", Privilege.WRITE));
+
+        Assertions.assertThatThrownBy(() -> createFileService(FileServiceOptions.defaults()).saveAll(USER, APPLICATION, PERIMETER, contents, true)).
+                isInstanceOf(LockException.class);
+
+        Mockito.verify(fileRepository, Mockito.never()).write(Mockito.any(File.class), Mockito.any(byte[].class));
+        // the locks acquired before the conflict are released
+        Assertions.assertThat(lockRepository.getFileLock(new KeyFileLock(APPLICATION, PERIMETER, first))).isNotPresent();
+    }
+
+    @Test
+    public void saveAllCommitsNothingWhenStagingFails() throws Exception {
+        IFileRepository.StagedFile stagedFile = Mockito.mock(IFileRepository.StagedFile.class);
+        Mockito.doReturn(stagedFile).when(fileRepository).stage(Mockito.eq(first), Mockito.any(byte[].class));
+        Mockito.doThrow(new IllegalStateException("disk full")).when(fileRepository).stage(Mockito.eq(second), Mockito.any(byte[].class));
+
+        Assertions.assertThatThrownBy(() -> createFileService(FileServiceOptions.defaults()).saveAll(USER, APPLICATION, PERIMETER, contents, true)).
+                isInstanceOf(IllegalStateException.class);
+
+        Mockito.verify(stagedFile).discard();
+        Mockito.verify(stagedFile, Mockito.never()).commit();
+        Assertions.assertThat(lockRepository.getFileLock(new KeyFileLock(APPLICATION, PERIMETER, first))).isNotPresent();
+        Assertions.assertThat(lockRepository.getFileLock(new KeyFileLock(APPLICATION, PERIMETER, second))).isNotPresent();
+    }
+
+    @Test
+    public void saveAllDiscardsRemainingStagedFilesWhenCommitFails() throws Exception {
+        File third = new File(folder, "third.txt");
+        contents.put(third, "third".getBytes());
+        IFileRepository.StagedFile firstStaged = Mockito.mock(IFileRepository.StagedFile.class);
+        IFileRepository.StagedFile secondStaged = Mockito.mock(IFileRepository.StagedFile.class);
+        IFileRepository.StagedFile thirdStaged = Mockito.mock(IFileRepository.StagedFile.class);
+        Mockito.doReturn(firstStaged).when(fileRepository).stage(Mockito.eq(first), Mockito.any(byte[].class));
+        Mockito.doReturn(secondStaged).when(fileRepository).stage(Mockito.eq(second), Mockito.any(byte[].class));
+        Mockito.doReturn(thirdStaged).when(fileRepository).stage(Mockito.eq(third), Mockito.any(byte[].class));
+        Mockito.doThrow(new IllegalStateException("disk full")).when(secondStaged).commit();
+
+        Assertions.assertThatThrownBy(() -> createFileService(FileServiceOptions.defaults()).saveAll(USER, APPLICATION, PERIMETER, contents, true)).
+                isInstanceOfSatisfying(PartialCommitException.class, e -> {
+                    Assertions.assertThat(e.getCommittedFiles()).containsExactly(first);
+                    Assertions.assertThat(e.getUncommittedFiles()).containsExactly(second, third);
+                });
+
+        Mockito.verify(firstStaged).commit();
+        Mockito.verify(firstStaged, Mockito.never()).discard();
+        Mockito.verify(secondStaged).discard();
+        Mockito.verify(thirdStaged, Mockito.never()).commit();
+        Mockito.verify(thirdStaged).discard();
+    }
+
+    @Test
+    public void saveAllInOppositeOrdersDoesNotDeadlock() throws Exception {
+        FileServiceOptions options = FileServiceOptions.builder().
+                lockStripes(16).
+                lockAcquisition(FileServiceOptions.LockAcquisition.WAIT).
+                build();
+        IFileService fileService = createFileService(options);
+
+        Map<File, byte[]> reversedContents = new LinkedHashMap<>();
+        reversedContents.put(first, "first".getBytes());
+        reversedContents.put(second, "second".getBytes());
+
+        CompletableFuture<Void> batch = CompletableFuture.runAsync(() -> saveAll(fileService, contents));
+        saveAll(fileService, reversedContents);
+        batch.get(10, TimeUnit.SECONDS);
+
+        Mockito.verify(fileRepository, Mockito.times(200)).write(Mockito.eq(first), Mockito.any(byte[].class));
+    }
+
+    private static void saveAll(IFileService fileService, Map<File, byte[]> contents) {
+        try {
+            for (int i = 0; i < 100; i++) {
+                fileService.saveAll(USER, APPLICATION, PERIMETER, contents, true);
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
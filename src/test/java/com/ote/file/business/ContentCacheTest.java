@@ -0,0 +1,135 @@
+package com.ote.file.business;
+
+import com.ote.file.api.IFileService;
+import com.ote.file.api.ServiceProvider;
+import com.ote.file.api.cache.IContentCache;
+import com.ote.file.api.model.File;
+import com.ote.file.api.model.Folder;
+import com.ote.file.mock.LockRepositoryMock;
+import com.ote.file.spi.*;
+import org.assertj.core.api.Assertions;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static com.ote.file.spi.ILockRepository.FileLock;
+import static com.ote.file.spi.ILockRepository.KeyFileLock;
+import static com.ote.file.spi.IUserRightRepository.Privilege;
+
+public class ContentCacheTest {
+
+    private static final String USER = "a user";
+    private static final String APPLICATION = "an application";
+    private static final String PERIMETER = "a perimeter";
+
+    @Mock
+    private IUserRepository userRepository;
+
+    @Mock
+    private IApplicationRepository applicationRepository;
+
+    @Mock
+    private IUserRightRepository userRightRepository;
+
+    @Mock
+    private IFileRepository fileRepository;
+
+    private ILockRepository lockRepository = new LockRepositoryMock();
+
+    private IContentCache contentCache;
+
+    private IFileService fileService;
+
+    private final File file = new File(new Folder(".", "target"), "cached.txt");
+
+    private AutoCloseable mocks;
+
+    @Before
+    public void init() {
+        mocks = MockitoAnnotations.openMocks(this);
+
+        Mockito.when(userRepository.isFound(Mockito.anyString())).thenReturn(true);
+        Mockito.when(applicationRepository.isFound(Mockito.anyString())).thenReturn(true);
+        Mockito.when(applicationRepository.isFound(Mockito.anyString(), Mockito.anyString())).thenReturn(true);
+        Mockito.when(userRightRepository.isAuthorized(Mockito.anyString(), Mockito.anyString(), Mockito.anyString(), Mockito.any(Privilege.class))).thenCallRealMethod();
+        Mockito.when(userRightRepository.getPrivileges(Mockito.anyString(), Mockito.anyString(), Mockito.anyString())).thenReturn(Collections.singleton(Privilege.WRITE));
+        Mockito.when(fileRepository.isFound(Mockito.anyString(), Mockito.anyString(), Mockito.any(Folder.class))).thenReturn(true);
+        Mockito.when(fileRepository.isFound(Mockito.anyString(), Mockito.anyString(), Mockito.any(File.class))).thenReturn(true);
+        Mockito.when(fileRepository.read(Mockito.any(File.class))).thenReturn("content".getBytes());
+
+        contentCache = ServiceProvider.getInstance().getFileServiceFactory().createContentCache(100, 1, TimeUnit.MINUTES);
+        FileServiceOptions options = FileServiceOptions.builder().contentCache(contentCache).build();
+        fileService = ServiceProvider.getInstance().
+                getFileServiceFactory().
+                createFileService(userRepository, applicationRepository, userRightRepository, fileRepository, lockRepository, 100, TimeUnit.MILLISECONDS, options);
+    }
+
+    @After
+    public void close() throws Exception {
+        mocks.close();
+    }
+
+    @Test
+    public void cachedContentIsReadWithoutLock() throws Exception {
+        fileService.read(USER, APPLICATION, PERIMETER, file);
+
+        // the file being locked by a writer does not prevent from reading its cached content
+        lockRepository.lockFile(new FileLock(new KeyFileLock(APPLICATION, PERIMETER, file), "another user", Privilege.WRITE));
+        for (int i = 0; i < 9; i++) {
+            Assertions.assertThat(fileService.read(USER, APPLICATION, PERIMETER, file)).isEqualTo("content".getBytes());
+        }
+
+        Mockito.verify(fileRepository, Mockito.times(1)).read(file);
+        Assertions.assertThat(contentCache.getStatistics().getHitCount()).isEqualTo(9);
+        Assertions.assertThat(contentCache.getStatistics().getMissCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void cachedContentCanNotBeModified() throws Exception {
+        fileService.read(USER, APPLICATION, PERIMETER, file)[0] = 'X';
+
+        Assertions.assertThat(fileService.read(USER, APPLICATION, PERIMETER, file)).isEqualTo("content".getBytes());
+    }
+
+    @Test
+    public void saveAndAppendInvalidateCachedContent() throws Exception {
+        fileService.read(USER, APPLICATION, PERIMETER, file);
+        fileService.save(USER, APPLICATION, PERIMETER, file, "saved".getBytes(), true);
+        fileService.read(USER, APPLICATION, PERIMETER, file);
+        fileService.append(USER, APPLICATION, PERIMETER, file, "appended".getBytes(), false);
+        fileService.read(USER, APPLICATION, PERIMETER, file);
+
+        Mockito.verify(fileRepository, Mockito.times(3)).read(file);
+    }
+
+    @Test
+    public void contentsAreEvictedBeyondMaximumSize() throws Exception {
+        Mockito.when(fileRepository.read(Mockito.any(File.class))).thenReturn(new byte[40]);
+
+        // 10 contents of 40 bytes do not fit into 100 bytes
+        for (int i = 0; i < 10; i++) {
+            fileService.read(USER, APPLICATION, PERIMETER, new File(file.getFolder(), i + ".bin"));
+        }
+
+        // eviction is run asynchronously by the cache
+        long deadline = System.currentTimeMillis() + 5000;
+        while (contentCache.getStatistics().getEvictionCount() < 8 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assertions.assertThat(contentCache.getStatistics().getEvictionCount()).isGreaterThanOrEqualTo(8);
+    }
+
+    @Test
+    public void rangeIsSlicedFromCachedContent() throws Exception {
+        fileService.read(USER, APPLICATION, PERIMETER, file);
+
+        Assertions.assertThat(fileService.read(USER, APPLICATION, PERIMETER, file, 3, 100)).isEqualTo("tent".getBytes());
+        Mockito.verify(fileRepository, Mockito.never()).read(Mockito.any(File.class), Mockito.anyLong(), Mockito.anyInt());
+    }
+}
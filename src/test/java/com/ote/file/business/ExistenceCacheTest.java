@@ -0,0 +1,100 @@
+package com.ote.file.business;
+
+import com.ote.file.api.ServiceProvider;
+import com.ote.file.api.cache.IApplicationCache;
+import com.ote.file.api.cache.IUserCache;
+import com.ote.file.spi.IApplicationRepository;
+import com.ote.file.spi.IUserRepository;
+import org.assertj.core.api.Assertions;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+import java.util.concurrent.TimeUnit;
+
+public class ExistenceCacheTest {
+
+    @Mock
+    private IUserRepository userRepository;
+
+    @Mock
+    private IApplicationRepository applicationRepository;
+
+    private IUserCache userCache;
+
+    private IApplicationCache applicationCache;
+
+    private AutoCloseable mocks;
+
+    @Before
+    public void init() {
+        mocks = MockitoAnnotations.openMocks(this);
+
+        Mockito.when(userRepository.isFound("user")).thenReturn(true);
+        Mockito.when(userRepository.isFound("unknown user")).thenReturn(false);
+        Mockito.when(applicationRepository.isFound(Mockito.anyString())).thenReturn(true);
+        Mockito.when(applicationRepository.isFound(Mockito.anyString(), Mockito.anyString())).thenReturn(true);
+
+        ServiceFactory serviceFactory = ServiceProvider.getInstance().getFileServiceFactory();
+        userCache = serviceFactory.createUserCache(userRepository, 100, 1, 0, TimeUnit.HOURS);
+        applicationCache = serviceFactory.createApplicationCache(applicationRepository, 100, 1, 1, TimeUnit.HOURS);
+    }
+
+    @After
+    public void close() throws Exception {
+        mocks.close();
+    }
+
+    @Test
+    public void foundUserIsCheckedOnce() {
+        for (int i = 0; i < 10; i++) {
+            Assertions.assertThat(userCache.isFound("user")).isTrue();
+        }
+
+        Mockito.verify(userRepository, Mockito.times(1)).isFound("user");
+        Assertions.assertThat(userCache.getStatistics().getHitCount()).isEqualTo(9);
+    }
+
+    @Test
+    public void notFoundUserExpiresWithItsOwnTimeToLive() {
+        // negative time to live is 0, hence a user which is not found is checked again
+        for (int i = 0; i < 3; i++) {
+            Assertions.assertThat(userCache.isFound("unknown user")).isFalse();
+        }
+
+        Mockito.verify(userRepository, Mockito.times(3)).isFound("unknown user");
+    }
+
+    @Test
+    public void userIsCheckedAgainWhenInvalidated() {
+        userCache.isFound("user");
+        userCache.invalidate("user");
+        userCache.isFound("user");
+
+        Mockito.verify(userRepository, Mockito.times(2)).isFound("user");
+    }
+
+    @Test
+    public void perimetersAreInvalidatedWithTheirApplication() {
+        applicationCache.isFound("application");
+        applicationCache.isFound("application", "perimeter1");
+        applicationCache.isFound("application", "perimeter2");
+        applicationCache.isFound("another application", "perimeter1");
+
+        applicationCache.invalidate("application");
+
+        applicationCache.isFound("application");
+        applicationCache.isFound("application", "perimeter1");
+        applicationCache.isFound("application", "perimeter2");
+        applicationCache.isFound("another application", "perimeter1");
+
+        Mockito.verify(applicationRepository, Mockito.times(2)).isFound("application");
+        Mockito.verify(applicationRepository, Mockito.times(2)).isFound("application", "perimeter1");
+        Mockito.verify(applicationRepository, Mockito.times(2)).isFound("application", "perimeter2");
+        Mockito.verify(applicationRepository, Mockito.times(1)).isFound("another application", "perimeter1");
+        Assertions.assertThat(applicationCache.getStatistics().getHitCount()).isEqualTo(1);
+    }
+}
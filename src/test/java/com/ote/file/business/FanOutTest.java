@@ -0,0 +1,94 @@
+package com.ote.file.business;
+
+import org.assertj.core.api.Assertions;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class FanOutTest {
+
+    private ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    @After
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void otherWorkersAreAwaitedWhenCallingWorkerThrowsError() {
+        FanOut fanOut = new FanOut(executor, 2);
+        Thread caller = Thread.currentThread();
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicBoolean finished = new AtomicBoolean();
+
+        Assertions.assertThatThrownBy(() -> fanOut.forEach(Arrays.asList("a", "b"), item -> {
+            try {
+                if (Thread.currentThread() == caller) {
+                    started.await(5, TimeUnit.SECONDS);
+                    throw new AssertionError("calling worker failed");
+                }
+                started.countDown();
+                Thread.sleep(100);
+                finished.set(true);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        })).isInstanceOf(AssertionError.class).hasMessage("calling worker failed");
+
+        Assertions.assertThat(finished).isTrue();
+    }
+
+    @Test
+    public void errorOfOtherWorkerIsThrown() {
+        FanOut fanOut = new FanOut(executor, 2);
+        Thread caller = Thread.currentThread();
+        CountDownLatch failed = new CountDownLatch(1);
+
+        Assertions.assertThatThrownBy(() -> fanOut.forEach(Arrays.asList("a", "b"), item -> {
+            if (Thread.currentThread() != caller) {
+                failed.countDown();
+                throw new AssertionError("other worker failed");
+            }
+            try {
+                failed.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        })).isInstanceOf(AssertionError.class).hasMessage("other worker failed");
+    }
+
+    @Test
+    public void submittedWorkersAreAwaitedWhenExecutorRejectsWorker() {
+        // a single thread and no queue: the first worker is run, the second one is rejected
+        ExecutorService saturatedExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new SynchronousQueue<>());
+        try {
+            FanOut fanOut = new FanOut(saturatedExecutor, 3);
+            AtomicInteger running = new AtomicInteger();
+
+            Assertions.assertThatThrownBy(() -> fanOut.forEach(Arrays.asList("a", "b", "c", "d"), item -> {
+                running.incrementAndGet();
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                } finally {
+                    running.decrementAndGet();
+                }
+            })).isInstanceOf(RejectedExecutionException.class);
+
+            Assertions.assertThat(running).hasValue(0);
+        } finally {
+            saturatedExecutor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.ote.file.business;
+
+import com.ote.file.api.IFileService;
+import com.ote.file.api.ServiceProvider;
+import com.ote.file.api.exception.FileFoundException;
+import com.ote.file.api.exception.FileNotFoundException;
+import com.ote.file.api.model.File;
+import com.ote.file.api.model.Folder;
+import com.ote.file.mock.LockRepositoryMock;
+import com.ote.file.spi.*;
+import org.assertj.core.api.Assertions;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static com.ote.file.spi.IUserRightRepository.Privilege;
+
+public class FileIndexTest {
+
+    private static final String USER = "a user";
+    private static final String APPLICATION = "an application";
+    private static final String PERIMETER = "a perimeter";
+
+    @Mock
+    private IUserRepository userRepository;
+
+    @Mock
+    private IApplicationRepository applicationRepository;
+
+    @Mock
+    private IUserRightRepository userRightRepository;
+
+    @Mock
+    private IFileRepository fileRepository;
+
+    private ILockRepository lockRepository = new LockRepositoryMock();
+
+    private IFileService fileService;
+
+    private final Folder folder = new Folder(".", "target");
+
+    private final Set<File> files = new HashSet<>();
+
+    private AutoCloseable mocks;
+
+    @Before
+    public void init() {
+        mocks = MockitoAnnotations.openMocks(this);
+
+        Mockito.when(userRepository.isFound(Mockito.anyString())).thenReturn(true);
+        Mockito.when(applicationRepository.isFound(Mockito.anyString())).thenReturn(true);
+        Mockito.when(applicationRepository.isFound(Mockito.anyString(), Mockito.anyString())).thenReturn(true);
+        Mockito.when(userRightRepository.isAuthorized(Mockito.anyString(), Mockito.anyString(), Mockito.anyString(), Mockito.any(Privilege.class))).thenCallRealMethod();
+        Mockito.when(userRightRepository.getPrivileges(Mockito.anyString(), Mockito.anyString(), Mockito.anyString())).thenReturn(Collections.singleton(Privilege.WRITE));
+        Mockito.when(fileRepository.isFound(Mockito.anyString(), Mockito.anyString(), Mockito.any(Folder.class))).thenCallRealMethod();
+        Mockito.when(fileRepository.isFound(Mockito.anyString(), Mockito.anyString(), Mockito.any(File.class))).thenCallRealMethod();
+        Mockito.when(fileRepository.getFolders(APPLICATION, PERIMETER)).thenReturn(Collections.singleton(folder));
+        Mockito.when(fileRepository.getFiles(APPLICATION, PERIMETER, folder)).thenAnswer(invocation -> new HashSet<>(files));
+        Mockito.when(fileRepository.read(Mockito.any(File.class))).thenReturn("content".getBytes());
+
+        fileService = createFileService(1, TimeUnit.HOURS);
+    }
+
+    @After
+    public void close() throws Exception {
+        mocks.close();
+    }
+
+    private IFileService createFileService(long timeToLive, TimeUnit timeUnit) {
+        FileServiceOptions options = FileServiceOptions.builder().indexFiles(true).indexTimeToLive(timeToLive).indexTimeUnit(timeUnit).build();
+        return ServiceProvider.getInstance().
+                getFileServiceFactory().
+                createFileService(userRepository, applicationRepository, userRightRepository, fileRepository, lockRepository, 1000, TimeUnit.MILLISECONDS, options);
+    }
+
+    @Test
+    public void folderAndFilesAreListedOnce() throws Exception {
+        File file = new File(folder, "indexed.txt");
+        files.add(file);
+
+        for (int i = 0; i < 10; i++) {
+            fileService.read(USER, APPLICATION, PERIMETER, file);
+        }
+
+        Mockito.verify(fileRepository, Mockito.times(1)).getFolders(APPLICATION, PERIMETER);
+        Mockito.verify(fileRepository, Mockito.times(1)).getFiles(APPLICATION, PERIMETER, folder);
+    }
+
+    @Test
+    public void writtenFileIsIndexed() throws Exception {
+        File file = new File(folder, "written.txt");
+
+        fileService.save(USER, APPLICATION, PERIMETER, file, "content".getBytes(), false);
+        for (int i = 0; i < 10; i++) {
+            fileService.read(USER, APPLICATION, PERIMETER, file);
+        }
+
+        // the folder is listed once by the index, the miss is confirmed once against the repository (which lists the folder
+        // of the mock) before the file is created, then the written file is added to the listing
+        Mockito.verify(fileRepository, Mockito.times(1)).isFound(APPLICATION, PERIMETER, file);
+        Mockito.verify(fileRepository, Mockito.times(2)).getFiles(APPLICATION, PERIMETER, folder);
+    }
+
+    @Test
+    public void fileCreatedOutsideTheServiceIsFoundOnceTheListingExpires() throws Exception {
+        IFileService fileService = createFileService(50, TimeUnit.MILLISECONDS);
+        File file = new File(folder, "indexed.txt");
+        File external = new File(folder, "external.txt");
+        files.add(file);
+        fileService.read(USER, APPLICATION, PERIMETER, file);
+
+        files.add(external);
+        Thread.sleep(100);
+
+        Assertions.assertThat(fileService.read(USER, APPLICATION, PERIMETER, external)).isEqualTo("content".getBytes());
+    }
+
+    @Test
+    public void missIsNotCheckedAgainstTheRepository() {
+        File file = new File(folder, "notFound.txt");
+
+        for (int i = 0; i < 10; i++) {
+            Assertions.assertThatThrownBy(() -> fileService.read(USER, APPLICATION, PERIMETER, file)).
+                    isInstanceOf(FileNotFoundException.class);
+        }
+
+        Mockito.verify(fileRepository, Mockito.times(1)).getFiles(APPLICATION, PERIMETER, folder);
+        Mockito.verify(fileRepository, Mockito.never()).isFound(Mockito.anyString(), Mockito.anyString(), Mockito.any(File.class));
+    }
+
+    @Test
+    public void fileCreatedBehindTheIndexIsAppendedInsteadOfCreated() throws Exception {
+        File external = new File(folder, "external.txt");
+        // the listing of the folder is cached without the file
+        Assertions.assertThatThrownBy(() -> fileService.read(USER, APPLICATION, PERIMETER, external)).isInstanceOf(FileNotFoundException.class);
+        files.add(external);
+
+        fileService.append(USER, APPLICATION, PERIMETER, external, "appended".getBytes(), true);
+
+        Mockito.verify(fileRepository).append(external, "appended".getBytes());
+        Mockito.verify(fileRepository, Mockito.never()).write(Mockito.any(File.class), Mockito.any(byte[].class));
+    }
+
+    @Test
+    public void fileCreatedBehindTheIndexIsNotReplaced() {
+        File external = new File(folder, "external.txt");
+        Assertions.assertThatThrownBy(() -> fileService.read(USER, APPLICATION, PERIMETER, external)).isInstanceOf(FileNotFoundException.class);
+        files.add(external);
+
+        Assertions.assertThatThrownBy(() -> fileService.save(USER, APPLICATION, PERIMETER, external, "content".getBytes(), false)).
+                isInstanceOf(FileFoundException.class);
+
+        Mockito.verify(fileRepository, Mockito.never()).write(Mockito.any(File.class), Mockito.any(byte[].class));
+    }
+
+    @Test(expected = FileNotFoundException.class)
+    public void fileNotFound() throws Exception {
+        fileService.read(USER, APPLICATION, PERIMETER, new File(folder, "notFound.txt"));
+    }
+}
@@ -11,6 +11,7 @@ import com.ote.file.api.model.Folder;
 import com.ote.file.mock.LockRepositoryMock;
 import com.ote.file.spi.*;
 import org.assertj.core.api.Assertions;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
@@ -23,8 +24,11 @@ import java.nio.file.Paths;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.CyclicBarrier;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static com.ote.file.spi.IUserRightRepository.Privilege;
 
@@ -46,10 +50,12 @@ public class FileListTest {
 
     private IFileService fileService;
 
+    private AutoCloseable mocks;
+
     @Before
     public void init() throws Exception {
 
-        MockitoAnnotations.initMocks(this);
+        mocks = MockitoAnnotations.openMocks(this);
 
         Mockito.when(userRightRepository.isAuthorized(Mockito.anyString(), Mockito.anyString(), Mockito.anyString(), Mockito.any(Privilege.class))).thenCallRealMethod();
         Mockito.when(fileRepository.isFound(Mockito.anyString(), Mockito.anyString(), Mockito.any(Folder.class))).thenCallRealMethod();
@@ -60,6 +66,11 @@ public class FileListTest {
                 createFileService(userRepository, applicationRepository, userRightRepository, fileRepository, lockRepository, 100, TimeUnit.MILLISECONDS);
     }
 
+    @After
+    public void close() throws Exception {
+        mocks.close();
+    }
+
     @Test(expected = UserNotFoundException.class)
     public void userNotFound() throws Exception {
 
@@ -165,6 +176,47 @@ public class FileListTest {
         Assertions.assertThat(files).contains(file1, file2, file3, file4, file5, file6);
     }
 
+    @Test
+    public void listFilesOfAllFoldersInParallel() throws Exception {
+
+        String user = "a user";
+        String application = "an application";
+        String perimeter = "a perimeter";
+
+        Set<Folder> folders = IntStream.range(0, 12).
+                mapToObj(i -> new Folder(".", "target", "listFilesOfAllFoldersInParallel", String.valueOf(i))).
+                collect(Collectors.toSet());
+
+        Mockito.when(userRepository.isFound(Mockito.anyString())).thenReturn(true);
+        Mockito.when(applicationRepository.isFound(Mockito.anyString())).thenReturn(true);
+        Mockito.when(applicationRepository.isFound(Mockito.anyString(), Mockito.anyString())).thenReturn(true);
+        Mockito.when(userRightRepository.getPrivileges(Mockito.anyString(), Mockito.anyString(), Mockito.anyString())).thenReturn(Collections.singleton(Privilege.READ));
+        Mockito.when(fileRepository.getFolders(Mockito.anyString(), Mockito.anyString())).thenReturn(folders);
+
+        // each listing waits for the one started with it, and the number of concurrent listings is recorded
+        int parallelism = 3;
+        CyclicBarrier barrier = new CyclicBarrier(parallelism);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        Mockito.when(fileRepository.getFiles(Mockito.anyString(), Mockito.anyString(), Mockito.any(Folder.class))).thenAnswer(invocation -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            barrier.await(5, TimeUnit.SECONDS);
+            running.decrementAndGet();
+            Folder folder = invocation.getArgument(2);
+            return Collections.singleton(new File(folder, "file.txt"));
+        });
+
+        FileServiceOptions options = FileServiceOptions.builder().parallelism(parallelism).build();
+        IFileService parallelFileService = ServiceProvider.getInstance().
+                getFileServiceFactory().
+                createFileService(userRepository, applicationRepository, userRightRepository, fileRepository, lockRepository, 100, TimeUnit.MILLISECONDS, options);
+
+        Set<File> files = parallelFileService.getFiles(user, application, perimeter);
+
+        Assertions.assertThat(files).hasSize(folders.size());
+        Assertions.assertThat(maxRunning.get()).isEqualTo(parallelism);
+    }
+
     private static Answer<Set<File>> listFolder(Folder folder1, Folder folder2) {
         return invocation -> {
             Folder folderArgument = invocation.getArgument(2);
@@ -5,9 +5,11 @@ import com.ote.file.api.ServiceProvider;
 import com.ote.file.api.exception.*;
 import com.ote.file.api.model.File;
 import com.ote.file.api.model.Folder;
+import com.ote.file.api.model.Page;
 import com.ote.file.mock.LockRepositoryMock;
 import com.ote.file.spi.*;
 import org.assertj.core.api.Assertions;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
@@ -16,11 +18,15 @@ import org.mockito.MockitoAnnotations;
 
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static com.ote.file.spi.IUserRightRepository.Privilege;
 
@@ -42,10 +48,12 @@ public class FolderFileListTest {
 
     private IFileService fileService;
 
+    private AutoCloseable mocks;
+
     @Before
     public void init() throws Exception {
 
-        MockitoAnnotations.initMocks(this);
+        mocks = MockitoAnnotations.openMocks(this);
 
         Mockito.when(userRightRepository.isAuthorized(Mockito.anyString(), Mockito.anyString(), Mockito.anyString(), Mockito.any(Privilege.class))).thenCallRealMethod();
         Mockito.when(fileRepository.isFound(Mockito.anyString(), Mockito.anyString(), Mockito.any(Folder.class))).thenCallRealMethod();
@@ -56,6 +64,11 @@ public class FolderFileListTest {
                 createFileService(userRepository, applicationRepository, userRightRepository, fileRepository, lockRepository, 1000, TimeUnit.MILLISECONDS);
     }
 
+    @After
+    public void close() throws Exception {
+        mocks.close();
+    }
+
     @Test(expected = UserNotFoundException.class)
     public void userNotFound() throws Exception {
 
@@ -164,4 +177,37 @@ public class FolderFileListTest {
 
         Assertions.assertThat(files).contains(file1, file2, file3);
     }
+
+    @Test
+    public void listFileByPageOK() throws Exception {
+
+        String user = "a user";
+        String application = "an application";
+        String perimeter = "a perimeter";
+
+        Folder listFolder = new Folder(".", "target", "listFileByPageOK");
+        List<File> expected = Arrays.asList(new File(listFolder, "a.txt"), new File(listFolder, "b.txt"), new File(listFolder, "c.txt"));
+
+        Mockito.when(userRepository.isFound(Mockito.anyString())).thenReturn(true);
+        Mockito.when(applicationRepository.isFound(Mockito.anyString())).thenReturn(true);
+        Mockito.when(applicationRepository.isFound(Mockito.anyString(), Mockito.anyString())).thenReturn(true);
+        Mockito.when(userRightRepository.getPrivileges(Mockito.anyString(), Mockito.anyString(), Mockito.anyString())).thenReturn(Collections.singleton(Privilege.READ));
+        Mockito.when(fileRepository.isFound(Mockito.anyString(), Mockito.anyString(), Mockito.any(Folder.class))).thenReturn(true);
+        Mockito.when(fileRepository.streamFiles(Mockito.anyString(), Mockito.anyString(), Mockito.any(Folder.class))).
+                thenAnswer(invocation -> Stream.of(expected.get(2), expected.get(0), expected.get(1)));
+        Mockito.when(fileRepository.getFiles(Mockito.anyString(), Mockito.anyString(), Mockito.any(Folder.class), Mockito.anyInt(), Mockito.any())).
+                thenCallRealMethod();
+
+        Page<File> firstPage = fileService.getFiles(user, application, perimeter, listFolder, 2, null);
+        Assertions.assertThat(firstPage.getItems()).containsExactly(expected.get(0), expected.get(1));
+        Assertions.assertThat(firstPage.isLast()).isFalse();
+
+        Page<File> lastPage = fileService.getFiles(user, application, perimeter, listFolder, 2, firstPage.getContinuationToken());
+        Assertions.assertThat(lastPage.getItems()).containsExactly(expected.get(2));
+        Assertions.assertThat(lastPage.isLast()).isTrue();
+
+        try (Stream<File> files = fileService.streamFiles(user, application, perimeter, listFolder)) {
+            Assertions.assertThat(files.sorted(Comparator.comparing(File::getName))).containsExactlyElementsOf(expected);
+        }
+    }
 }
@@ -11,6 +11,7 @@ import com.ote.file.api.model.Folder;
 import com.ote.file.mock.LockRepositoryMock;
 import com.ote.file.spi.*;
 import org.assertj.core.api.Assertions;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
@@ -45,10 +46,12 @@ public class FolderListTest {
 
     private IFileService fileService;
 
+    private AutoCloseable mocks;
+
     @Before
     public void init() throws Exception {
 
-        MockitoAnnotations.initMocks(this);
+        mocks = MockitoAnnotations.openMocks(this);
 
         Mockito.when(userRightRepository.isAuthorized(Mockito.anyString(), Mockito.anyString(), Mockito.anyString(), Mockito.any(Privilege.class))).thenCallRealMethod();
         Mockito.when(fileRepository.isFound(Mockito.anyString(), Mockito.anyString(), Mockito.any(Folder.class))).thenCallRealMethod();
@@ -59,6 +62,11 @@ public class FolderListTest {
                 createFileService(userRepository, applicationRepository, userRightRepository, fileRepository, lockRepository, 1000, TimeUnit.MILLISECONDS);
     }
 
+    @After
+    public void close() throws Exception {
+        mocks.close();
+    }
+
     @Test(expected = UserNotFoundException.class)
     public void userNotFound() throws Exception {
 
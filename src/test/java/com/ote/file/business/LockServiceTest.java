@@ -1,19 +1,28 @@
 package com.ote.file.business;
 
+import com.ote.file.adapter.InMemoryLockRepository;
 import com.ote.file.api.exception.LockException;
 import com.ote.file.api.model.File;
 import com.ote.file.api.model.Folder;
 import com.ote.file.mock.LockRepositoryMock;
 import com.ote.file.spi.ILockRepository;
+import org.assertj.core.api.Assertions;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.MockitoAnnotations;
 import org.mockito.Spy;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
+import static com.ote.file.spi.ILockRepository.KeyFileLock;
 import static com.ote.file.spi.IUserRightRepository.Privilege;
 
 public class LockServiceTest {
@@ -23,14 +32,21 @@ public class LockServiceTest {
 
     private LockService lockService;
 
+    private AutoCloseable mocks;
+
     @Before
     public void init() throws Exception {
 
-        MockitoAnnotations.initMocks(this);
+        mocks = MockitoAnnotations.openMocks(this);
 
         lockService = new LockService(lockRepository, 1000, TimeUnit.MILLISECONDS);
     }
 
+    @After
+    public void close() throws Exception {
+        mocks.close();
+    }
+
     @Test
     public void twoUsersCanReadSameFileAtSameTime() throws Throwable {
         try {
@@ -111,7 +127,211 @@ public class LockServiceTest {
         }
     }
 
+    @Test
+    public void differentFilesAreLockedInParallelWithStripes() throws Throwable {
+        LockRepositoryMock slowLockRepository = new LockRepositoryMock();
+        // locking a file for user1 takes longer than the timeout
+        slowLockRepository.addSleepTime("user1", 300);
+        LockService stripedLockService = new LockService(slowLockRepository, 100, TimeUnit.MILLISECONDS, FileServiceOptions.builder().lockStripes(64).build());
+
+        File file1 = new File(new Folder(".", "target", "testLockService"), "test1.txt");
+        File file2 = new File(new Folder(".", "target", "testLockService"), "test2.txt");
+        StripedLock stripedLock = new StripedLock(64);
+        Assertions.assertThat(stripedLock.get(new KeyFileLock("application", "perimeter", file1))).
+                isNotSameAs(stripedLock.get(new KeyFileLock("application", "perimeter", file2)));
+
+        CompletableFuture cf1 = CompletableFuture.runAsync(() -> run(stripedLockService, "user1", Privilege.WRITE, file1, 1));
+        Thread.sleep(10); // to enforce cf1 is executed before cf2
+        // user2 is not blocked by the lock request of user1 since the files are different
+        run(stripedLockService, "user2", Privilege.WRITE, file2, 1);
+
+        cf1.get();
+    }
+
+    @Test(expected = LockException.class)
+    public void twoUsersCannotWriteSameFileAtSameTimeWithStripes() throws Throwable {
+        try {
+            LockService stripedLockService = new LockService(new LockRepositoryMock(), 1000, TimeUnit.MILLISECONDS, FileServiceOptions.builder().lockStripes(64).build());
+            File file = new File(new Folder(".", "target", "testLockService"), "test.txt");
+
+            CompletableFuture cf1 = CompletableFuture.runAsync(() -> run(stripedLockService, "user1", Privilege.WRITE, file, 100));
+            Thread.sleep(10); // to enforce cf1 is executed before cf2
+            CompletableFuture cf2 = CompletableFuture.runAsync(() -> run(stripedLockService, "user2", Privilege.WRITE, file, 1));
+
+            CompletableFuture.allOf(cf1, cf2).get();
+        } catch (Exception e) {
+            if (e instanceof ExecutionException) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw e.getCause().getCause();
+                }
+            }
+            throw e;
+        }
+    }
+
+    @Test
+    public void fileIsReleasedByTheLastReader() throws Exception {
+        InMemoryLockRepository inMemoryLockRepository = new InMemoryLockRepository();
+        LockService inMemoryLockService = new LockService(inMemoryLockRepository, 1000, TimeUnit.MILLISECONDS, FileServiceOptions.builder().lockStripes(64).build());
+        File file = new File(new Folder(".", "target", "testLockService"), "test.txt");
+
+        inMemoryLockService.lockFile("user1", "application", "perimeter", Privilege.READ, file);
+        inMemoryLockService.lockFile("user2", "application", "perimeter", Privilege.READ, file);
+        inMemoryLockService.unlockFile("user1", "application", "perimeter", Privilege.READ, file);
+
+        // user2 is still reading the file
+        Assertions.assertThatThrownBy(() -> inMemoryLockService.lockFile("user3", "application", "perimeter", Privilege.WRITE, file)).
+                isInstanceOf(LockException.class);
+
+        inMemoryLockService.unlockFile("user2", "application", "perimeter", Privilege.READ, file);
+        inMemoryLockService.lockFile("user3", "application", "perimeter", Privilege.WRITE, file);
+        inMemoryLockService.unlockFile("user3", "application", "perimeter", Privilege.WRITE, file);
+    }
+
+    @Test
+    public void readersAndWriterShareFileInSnapshotMode() throws Exception {
+        InMemoryLockRepository inMemoryLockRepository = new InMemoryLockRepository();
+        LockService snapshotLockService = new LockService(inMemoryLockRepository, 1000, TimeUnit.MILLISECONDS,
+                FileServiceOptions.builder().lockStripes(64).writeMode(FileServiceOptions.WriteMode.SNAPSHOT).build());
+        File file = new File(new Folder(".", "target", "testLockService"), "test.txt");
+
+        snapshotLockService.lockFile("user1", "application", "perimeter", Privilege.READ, file);
+        snapshotLockService.lockFile("user2", "application", "perimeter", Privilege.WRITE, file);
+        snapshotLockService.lockFile("user3", "application", "perimeter", Privilege.READ, file);
+
+        // writers still exclude each other
+        Assertions.assertThatThrownBy(() -> snapshotLockService.lockFile("user4", "application", "perimeter", Privilege.WRITE, file)).
+                isInstanceOf(LockException.class);
+
+        snapshotLockService.unlockFile("user1", "application", "perimeter", Privilege.READ, file);
+        snapshotLockService.unlockFile("user2", "application", "perimeter", Privilege.WRITE, file);
+        snapshotLockService.unlockFile("user3", "application", "perimeter", Privilege.READ, file);
+    }
+
+    @Test
+    public void manyReadersCanReadSameFileAtSameTime() throws Exception {
+        InMemoryLockRepository inMemoryLockRepository = new InMemoryLockRepository();
+        LockService inMemoryLockService = new LockService(inMemoryLockRepository, 1000, TimeUnit.MILLISECONDS, FileServiceOptions.builder().lockStripes(64).build());
+        File file = new File(new Folder(".", "target", "testLockService"), "test.txt");
+        KeyFileLock key = new KeyFileLock("application", "perimeter", file);
+
+        ExecutorService executorService = Executors.newFixedThreadPool(32);
+        try {
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (int i = 0; i < 5000; i++) {
+                String user = "user" + (i % 100);
+                futures.add(CompletableFuture.runAsync(() -> run(inMemoryLockService, user, Privilege.READ, file, 0), executorService));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get();
+        } finally {
+            executorService.shutdown();
+        }
+
+        Assertions.assertThat(inMemoryLockRepository.getReaderCount(key)).isEqualTo(0);
+        Assertions.assertThat(inMemoryLockRepository.getFileLock(key)).isNotPresent();
+    }
+
+    @Test
+    public void writerWaitsUntilReaderReleasesFile() throws Exception {
+        LockService waitingLockService = createWaitingLockService(1000);
+        File file = new File(new Folder(".", "target", "testLockService"), "test.txt");
+
+        CompletableFuture cf1 = CompletableFuture.runAsync(() -> run(waitingLockService, "user1", Privilege.READ, file, 100));
+        Thread.sleep(10); // to enforce cf1 is executed before cf2
+        CompletableFuture cf2 = CompletableFuture.runAsync(() -> run(waitingLockService, "user2", Privilege.WRITE, file, 1));
+
+        CompletableFuture.allOf(cf1, cf2).get();
+    }
+
+    @Test(expected = LockException.class)
+    public void writerWaitsUntilTimeout() throws Throwable {
+        try {
+            LockService waitingLockService = createWaitingLockService(100);
+            File file = new File(new Folder(".", "target", "testLockService"), "test.txt");
+
+            CompletableFuture cf1 = CompletableFuture.runAsync(() -> run(waitingLockService, "user1", Privilege.WRITE, file, 500));
+            Thread.sleep(10); // to enforce cf1 is executed before cf2
+            CompletableFuture cf2 = CompletableFuture.runAsync(() -> run(waitingLockService, "user2", Privilege.WRITE, file, 1));
+
+            CompletableFuture.allOf(cf1, cf2).get();
+        } catch (Exception e) {
+            if (e instanceof ExecutionException) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw e.getCause().getCause();
+                }
+            }
+            throw e;
+        }
+    }
+
+    @Test
+    public void queuedWriterIsNotStarvedByReaders() throws Exception {
+        LockService waitingLockService = createWaitingLockService(1000);
+        File file = new File(new Folder(".", "target", "testLockService"), "test.txt");
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+
+        CompletableFuture cf1 = CompletableFuture.runAsync(() -> run(waitingLockService, "user1", Privilege.READ, file, 100, order));
+        Thread.sleep(10); // to enforce cf1 is executed before cf2
+        CompletableFuture cf2 = CompletableFuture.runAsync(() -> run(waitingLockService, "user2", Privilege.WRITE, file, 50, order));
+        Thread.sleep(10); // to enforce cf2 is executed before cf3
+        // user3 could share the lock of user1, but it has to wait for user2 which arrived first
+        CompletableFuture cf3 = CompletableFuture.runAsync(() -> run(waitingLockService, "user3", Privilege.READ, file, 1, order));
+
+        CompletableFuture.allOf(cf1, cf2, cf3).get();
+
+        Assertions.assertThat(order).containsExactly("user1", "user2", "user3");
+    }
+
+    @Test
+    public void readerDoesNotQueueBehindWritersInSnapshotMode() throws Exception {
+        FileServiceOptions options = FileServiceOptions.builder().
+                lockStripes(64).
+                lockAcquisition(FileServiceOptions.LockAcquisition.WAIT).
+                writeMode(FileServiceOptions.WriteMode.SNAPSHOT).
+                build();
+        LockService waitingLockService = new LockService(new InMemoryLockRepository(), 1000, TimeUnit.MILLISECONDS, options);
+        File file = new File(new Folder(".", "target", "testLockService"), "test.txt");
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+
+        CompletableFuture cf1 = CompletableFuture.runAsync(() -> run(waitingLockService, "user1", Privilege.WRITE, file, 100, order));
+        Thread.sleep(10); // to enforce cf1 is executed before cf2
+        CompletableFuture cf2 = CompletableFuture.runAsync(() -> run(waitingLockService, "user2", Privilege.WRITE, file, 50, order));
+        Thread.sleep(10); // to enforce cf2 is executed before cf3
+        // user3 reads the committed content, it neither waits for user1 nor for user2
+        CompletableFuture cf3 = CompletableFuture.runAsync(() -> run(waitingLockService, "user3", Privilege.READ, file, 1, order));
+
+        CompletableFuture.allOf(cf1, cf2, cf3).get();
+
+        Assertions.assertThat(order).containsExactly("user1", "user3", "user2");
+    }
+
+    private static LockService createWaitingLockService(long timeout) {
+        FileServiceOptions options = FileServiceOptions.builder().
+                lockStripes(64).
+                lockAcquisition(FileServiceOptions.LockAcquisition.WAIT).
+                build();
+        return new LockService(new InMemoryLockRepository(), timeout, TimeUnit.MILLISECONDS, options);
+    }
+
+    private static void run(LockService lockService, String user, Privilege privilege, File file, long wait, List<String> order) {
+        try {
+            try {
+                lockService.lockFile(user, "application", "perimeter", privilege, file);
+                order.add(user);
+                Thread.sleep(wait);
+            } finally {
+                lockService.unlockFile(user, "application", "perimeter", privilege, file);
+            }
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     private void run(String user, Privilege privilege, File file, long wait) {
+        run(lockService, user, privilege, file, wait);
+    }
+
+    private static void run(LockService lockService, String user, Privilege privilege, File file, long wait) {
         try {
             try {
                 lockService.lockFile(user, "application", "perimeter", privilege, file);
@@ -0,0 +1,167 @@
+package com.ote.file.business;
+
+import com.ote.file.adapter.InMemoryVersionRepository;
+import com.ote.file.api.IFileService;
+import com.ote.file.api.ServiceProvider;
+import com.ote.file.api.exception.VersionConflictException;
+import com.ote.file.api.model.File;
+import com.ote.file.api.model.Folder;
+import com.ote.file.api.model.Versioned;
+import com.ote.file.mock.LockRepositoryMock;
+import com.ote.file.spi.*;
+import org.assertj.core.api.Assertions;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+import java.util.EnumSet;
+import java.util.concurrent.TimeUnit;
+
+import static com.ote.file.spi.ILockRepository.KeyFileLock;
+import static com.ote.file.spi.IUserRightRepository.Privilege;
+
+public class OptimisticSaveTest {
+
+    private static final String USER = "a user";
+    private static final String APPLICATION = "an application";
+    private static final String PERIMETER = "a perimeter";
+
+    @Mock
+    private IUserRepository userRepository;
+
+    @Mock
+    private IApplicationRepository applicationRepository;
+
+    @Mock
+    private IUserRightRepository userRightRepository;
+
+    @Mock
+    private IFileRepository fileRepository;
+
+    @Mock
+    private IFileRepository.StagedFile stagedFile;
+
+    private ILockRepository lockRepository = new LockRepositoryMock();
+
+    private IVersionRepository versionRepository = new InMemoryVersionRepository();
+
+    private final File file = new File(new Folder(".", "target"), "file.txt");
+
+    private final KeyFileLock key = new KeyFileLock(APPLICATION, PERIMETER, file);
+
+    private AutoCloseable mocks;
+
+    @Before
+    public void init() {
+        mocks = MockitoAnnotations.openMocks(this);
+
+        Mockito.when(userRepository.isFound(Mockito.anyString())).thenReturn(true);
+        Mockito.when(applicationRepository.isFound(Mockito.anyString())).thenReturn(true);
+        Mockito.when(applicationRepository.isFound(Mockito.anyString(), Mockito.anyString())).thenReturn(true);
+        Mockito.when(userRightRepository.isAuthorized(Mockito.anyString(), Mockito.anyString(), Mockito.anyString(), Mockito.any(Privilege.class))).thenCallRealMethod();
+        Mockito.when(userRightRepository.getPrivileges(Mockito.anyString(), Mockito.anyString(), Mockito.anyString())).thenReturn(EnumSet.of(Privilege.READ, Privilege.WRITE));
+        Mockito.when(fileRepository.isFound(Mockito.anyString(), Mockito.anyString(), Mockito.any(Folder.class))).thenReturn(true);
+        Mockito.when(fileRepository.isFound(Mockito.anyString(), Mockito.anyString(), Mockito.any(File.class))).thenReturn(true);
+        Mockito.when(fileRepository.stage(Mockito.any(File.class), Mockito.any(byte[].class))).thenReturn(stagedFile);
+    }
+
+    @After
+    public void close() throws Exception {
+        mocks.close();
+    }
+
+    private IFileService createFileService(IVersionRepository versionRepository) {
+        FileServiceOptions options = FileServiceOptions.builder().versionRepository(versionRepository).build();
+        return ServiceProvider.getInstance().
+                getFileServiceFactory().
+                createFileService(userRepository, applicationRepository, userRightRepository, fileRepository, lockRepository, 1000, TimeUnit.MILLISECONDS, options);
+    }
+
+    @Test
+    public void saveWithExpectedVersionOK() throws Exception {
+        IFileService fileService = createFileService(versionRepository);
+
+        Assertions.assertThat(fileService.save(USER, APPLICATION, PERIMETER, file, "first".getBytes(), 0)).isEqualTo(1);
+        Assertions.assertThat(fileService.save(USER, APPLICATION, PERIMETER, file, "second".getBytes(), 1)).isEqualTo(2);
+
+        Mockito.verify(stagedFile, Mockito.times(2)).commit();
+        Mockito.verify(stagedFile, Mockito.never()).discard();
+        Assertions.assertThat(lockRepository.getFileLock(key)).isNotPresent();
+    }
+
+    @Test
+    public void saveWithStaleVersionWritesNothing() throws Exception {
+        IFileService fileService = createFileService(versionRepository);
+        fileService.save(USER, APPLICATION, PERIMETER, file, "first".getBytes(), true);
+
+        Assertions.assertThatThrownBy(() -> fileService.save(USER, APPLICATION, PERIMETER, file, "second".getBytes(), 0)).
+                isInstanceOf(VersionConflictException.class);
+
+        Mockito.verify(fileRepository, Mockito.never()).stage(Mockito.any(File.class), Mockito.any(byte[].class));
+        Assertions.assertThat(versionRepository.getVersion(key)).isEqualTo(1);
+    }
+
+    @Test
+    public void saveWithVersionChangedWhileStagingDiscardsTheStagedFile() throws Exception {
+        IFileService fileService = createFileService(versionRepository);
+        // another writer commits while the content is staged
+        Mockito.when(fileRepository.stage(Mockito.any(File.class), Mockito.any(byte[].class))).thenAnswer(invocation -> {
+            versionRepository.incrementVersion(key);
+            return stagedFile;
+        });
+
+        Assertions.assertThatThrownBy(() -> fileService.save(USER, APPLICATION, PERIMETER, file, "content".getBytes(), 0)).
+                isInstanceOf(VersionConflictException.class);
+
+        Mockito.verify(stagedFile, Mockito.never()).commit();
+        Mockito.verify(stagedFile).discard();
+        Assertions.assertThat(lockRepository.getFileLock(key)).isNotPresent();
+    }
+
+    @Test
+    public void contentIsStagedWithoutLock() throws Exception {
+        IFileService fileService = createFileService(versionRepository);
+        Mockito.when(fileRepository.stage(Mockito.any(File.class), Mockito.any(byte[].class))).thenAnswer(invocation -> {
+            Assertions.assertThat(lockRepository.getFileLock(key)).isNotPresent();
+            return stagedFile;
+        });
+
+        fileService.save(USER, APPLICATION, PERIMETER, file, "content".getBytes(), 0);
+
+        Mockito.verify(stagedFile).commit();
+    }
+
+    @Test
+    public void readVersionedOK() throws Exception {
+        Mockito.when(fileRepository.read(file)).thenReturn("content".getBytes());
+        IFileService fileService = createFileService(versionRepository);
+        fileService.append(USER, APPLICATION, PERIMETER, file, "content".getBytes(), true);
+
+        Versioned<byte[]> versioned = fileService.readVersioned(USER, APPLICATION, PERIMETER, file);
+
+        Assertions.assertThat(versioned.getContent()).isEqualTo("content".getBytes());
+        Assertions.assertThat(versioned.getVersion()).isEqualTo(1);
+    }
+
+    @Test
+    public void failedWriteDoesNotChangeVersion() throws Exception {
+        IFileService fileService = createFileService(versionRepository);
+        Mockito.doThrow(new IllegalStateException("disk full")).when(fileRepository).write(Mockito.any(File.class), Mockito.any(byte[].class));
+
+        Assertions.assertThatThrownBy(() -> fileService.save(USER, APPLICATION, PERIMETER, file, "content".getBytes(), true)).
+                isInstanceOf(IllegalStateException.class);
+
+        Assertions.assertThat(versionRepository.getVersion(key)).isEqualTo(0);
+    }
+
+    @Test
+    public void saveWithoutVersionRepositoryFails() {
+        IFileService fileService = createFileService(null);
+
+        Assertions.assertThatThrownBy(() -> fileService.save(USER, APPLICATION, PERIMETER, file, "content".getBytes(), 0)).
+                isInstanceOf(IllegalStateException.class);
+    }
+}
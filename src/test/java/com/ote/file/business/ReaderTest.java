@@ -9,16 +9,21 @@ import com.ote.file.api.model.Folder;
 import com.ote.file.mock.LockRepositoryMock;
 import com.ote.file.spi.*;
 import org.assertj.core.api.Assertions;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.concurrent.TimeUnit;
 
+import static com.ote.file.spi.ILockRepository.KeyFileLock;
 import static com.ote.file.spi.IUserRightRepository.Privilege;
 
 public class ReaderTest {
@@ -39,10 +44,12 @@ public class ReaderTest {
 
     private IFileService fileService;
 
+    private AutoCloseable mocks;
+
     @Before
     public void init() throws Exception {
 
-        MockitoAnnotations.initMocks(this);
+        mocks = MockitoAnnotations.openMocks(this);
 
         Mockito.when(userRightRepository.isAuthorized(Mockito.anyString(), Mockito.anyString(), Mockito.anyString(), Mockito.any(Privilege.class))).thenCallRealMethod();
         Mockito.when(fileRepository.isFound(Mockito.anyString(), Mockito.anyString(), Mockito.any(Folder.class))).thenCallRealMethod();
@@ -53,6 +60,11 @@ public class ReaderTest {
                 createFileService(userRepository, applicationRepository, userRightRepository, fileRepository, lockRepository, 1000, TimeUnit.MILLISECONDS);
     }
 
+    @After
+    public void close() throws Exception {
+        mocks.close();
+    }
+
     @Test(expected = UserNotFoundException.class)
     public void userNotFound() throws Exception {
 
@@ -197,4 +209,65 @@ public class ReaderTest {
 
         Assertions.assertThat(actual).isEqualTo(expected.getBytes());
     }
+
+    @Test
+    public void readAsStreamOK() throws Exception {
+
+        String user = "a user";
+        String application = "an application";
+        String perimeter = "a perimeter";
+        Folder folder = new Folder(".", "target");
+        File file = new File(folder, "readAsStreamOK.txt");
+
+        String expected = "readAsStreamOK";
+        Utils.saveFile(file.getPath(), expected.getBytes());
+
+        Mockito.when(userRepository.isFound(Mockito.anyString())).thenReturn(true);
+        Mockito.when(applicationRepository.isFound(Mockito.anyString())).thenReturn(true);
+        Mockito.when(applicationRepository.isFound(Mockito.anyString(), Mockito.anyString())).thenReturn(true);
+        Mockito.when(userRightRepository.getPrivileges(Mockito.anyString(), Mockito.anyString(), Mockito.anyString())).thenReturn(Collections.singleton(Privilege.READ));
+        Mockito.when(fileRepository.isFound(Mockito.anyString(), Mockito.anyString(), Mockito.any(Folder.class))).thenReturn(true);
+        Mockito.when(fileRepository.isFound(Mockito.anyString(), Mockito.anyString(), Mockito.any(File.class))).thenReturn(true);
+        Mockito.when(fileRepository.openInputStream(Mockito.any(File.class))).thenAnswer(inv -> Files.newInputStream(Paths.get(file.getPath())));
+
+        KeyFileLock key = new KeyFileLock(application, perimeter, file);
+        byte[] actual;
+        try (InputStream inputStream = fileService.readAsStream(user, application, perimeter, file)) {
+            // the file remains locked as long as the stream is opened
+            Assertions.assertThat(lockRepository.getFileLock(key)).isPresent();
+            actual = new byte[expected.length()];
+            Assertions.assertThat(inputStream.read(actual)).isEqualTo(expected.length());
+        }
+
+        Assertions.assertThat(actual).isEqualTo(expected.getBytes());
+        Assertions.assertThat(lockRepository.getFileLock(key)).isNotPresent();
+    }
+
+    @Test
+    public void readRangeOK() throws Exception {
+
+        String user = "a user";
+        String application = "an application";
+        String perimeter = "a perimeter";
+        Folder folder = new Folder(".", "target");
+        File file = new File(folder, "readRangeOK.txt");
+
+        Utils.saveFile(file.getPath(), "header-body-tail".getBytes());
+
+        Mockito.when(userRepository.isFound(Mockito.anyString())).thenReturn(true);
+        Mockito.when(applicationRepository.isFound(Mockito.anyString())).thenReturn(true);
+        Mockito.when(applicationRepository.isFound(Mockito.anyString(), Mockito.anyString())).thenReturn(true);
+        Mockito.when(userRightRepository.getPrivileges(Mockito.anyString(), Mockito.anyString(), Mockito.anyString())).thenReturn(Collections.singleton(Privilege.READ));
+        Mockito.when(fileRepository.isFound(Mockito.anyString(), Mockito.anyString(), Mockito.any(Folder.class))).thenReturn(true);
+        Mockito.when(fileRepository.isFound(Mockito.anyString(), Mockito.anyString(), Mockito.any(File.class))).thenReturn(true);
+        Mockito.when(fileRepository.read(Mockito.any(File.class), Mockito.anyLong(), Mockito.anyInt())).thenCallRealMethod();
+        Mockito.when(fileRepository.openInputStream(Mockito.any(File.class))).thenAnswer(inv -> Files.newInputStream(Paths.get(file.getPath())));
+
+        Assertions.assertThat(fileService.read(user, application, perimeter, file, 0, 6)).isEqualTo("header".getBytes());
+        Assertions.assertThat(fileService.read(user, application, perimeter, file, 12, 100)).isEqualTo("tail".getBytes());
+        // the length is not allocated up front
+        Assertions.assertThat(fileService.read(user, application, perimeter, file, 12, Integer.MAX_VALUE)).isEqualTo("tail".getBytes());
+        Mockito.verify(fileRepository, Mockito.never()).read(Mockito.any(File.class));
+        Assertions.assertThat(lockRepository.getFileLock(new KeyFileLock(application, perimeter, file))).isNotPresent();
+    }
 }
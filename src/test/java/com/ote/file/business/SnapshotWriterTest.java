@@ -0,0 +1,160 @@
+package com.ote.file.business;
+
+import com.ote.file.api.IFileService;
+import com.ote.file.api.ServiceProvider;
+import com.ote.file.api.exception.LockException;
+import com.ote.file.api.model.File;
+import com.ote.file.api.model.Folder;
+import com.ote.file.mock.LockRepositoryMock;
+import com.ote.file.spi.*;
+import org.assertj.core.api.Assertions;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+import java.io.InputStream;
+import java.util.EnumSet;
+import java.util.concurrent.TimeUnit;
+
+import static com.ote.file.spi.ILockRepository.FileLock;
+import static com.ote.file.spi.ILockRepository.KeyFileLock;
+import static com.ote.file.spi.IUserRightRepository.Privilege;
+
+public class SnapshotWriterTest {
+
+    private static final String USER = "a user";
+    private static final String APPLICATION = "an application";
+    private static final String PERIMETER = "a perimeter";
+
+    @Mock
+    private IUserRepository userRepository;
+
+    @Mock
+    private IApplicationRepository applicationRepository;
+
+    @Mock
+    private IUserRightRepository userRightRepository;
+
+    @Mock
+    private IFileRepository fileRepository;
+
+    @Mock
+    private IFileRepository.StagedFile stagedFile;
+
+    private ILockRepository lockRepository = new LockRepositoryMock();
+
+    private final File file = new File(new Folder(".", "target"), "file.txt");
+
+    private final KeyFileLock key = new KeyFileLock(APPLICATION, PERIMETER, file);
+
+    private IFileService fileService;
+
+    private AutoCloseable mocks;
+
+    @Before
+    public void init() {
+        mocks = MockitoAnnotations.openMocks(this);
+
+        Mockito.when(userRepository.isFound(Mockito.anyString())).thenReturn(true);
+        Mockito.when(applicationRepository.isFound(Mockito.anyString())).thenReturn(true);
+        Mockito.when(applicationRepository.isFound(Mockito.anyString(), Mockito.anyString())).thenReturn(true);
+        Mockito.when(userRightRepository.isAuthorized(Mockito.anyString(), Mockito.anyString(), Mockito.anyString(), Mockito.any(Privilege.class))).thenCallRealMethod();
+        Mockito.when(userRightRepository.getPrivileges(Mockito.anyString(), Mockito.anyString(), Mockito.anyString())).thenReturn(EnumSet.of(Privilege.READ, Privilege.WRITE));
+        Mockito.when(fileRepository.isFound(Mockito.anyString(), Mockito.anyString(), Mockito.any(Folder.class))).thenReturn(true);
+        Mockito.when(fileRepository.isFound(Mockito.anyString(), Mockito.anyString(), Mockito.any(File.class))).thenReturn(true);
+        Mockito.when(fileRepository.stage(Mockito.any(File.class), Mockito.any(byte[].class))).thenReturn(stagedFile);
+        Mockito.when(fileRepository.isStagingAtomic()).thenReturn(true);
+
+        FileServiceOptions options = FileServiceOptions.builder().writeMode(FileServiceOptions.WriteMode.SNAPSHOT).build();
+        fileService = ServiceProvider.getInstance().
+                getFileServiceFactory().
+                createFileService(userRepository, applicationRepository, userRightRepository, fileRepository, lockRepository, 1000, TimeUnit.MILLISECONDS, options);
+    }
+
+    @After
+    public void close() throws Exception {
+        mocks.close();
+    }
+
+    @Test
+    public void fileIsReadWhileBeingWritten() throws Exception {
+        Mockito.when(fileRepository.read(file)).thenReturn("previous".getBytes());
+        lockRepository.lockFile(new FileLock(key, "another user", Privilege.WRITE));
+
+        Assertions.assertThat(fileService.read(USER, APPLICATION, PERIMETER, file)).isEqualTo("previous".getBytes());
+    }
+
+    @Test
+    public void fileIsWrittenWhileBeingRead() throws Exception {
+        lockRepository.lockFile(new FileLock(key, "another user", Privilege.READ));
+
+        fileService.save(USER, APPLICATION, PERIMETER, file, "content".getBytes(), true);
+
+        Mockito.verify(stagedFile).commit();
+        Mockito.verify(fileRepository, Mockito.never()).write(Mockito.any(File.class), Mockito.any(byte[].class));
+    }
+
+    @Test
+    public void contentIsStagedWithoutLock() throws Exception {
+        Mockito.when(fileRepository.stage(Mockito.any(File.class), Mockito.any(byte[].class))).thenAnswer(invocation -> {
+            Assertions.assertThat(lockRepository.getFileLock(key)).isNotPresent();
+            return stagedFile;
+        });
+
+        fileService.save(USER, APPLICATION, PERIMETER, file, "content".getBytes(), true);
+
+        Mockito.verify(stagedFile).commit();
+        Assertions.assertThat(lockRepository.getFileLock(key)).isNotPresent();
+    }
+
+    @Test
+    public void stagedFileIsDiscardedWhenFileIsBeingWritten() throws Exception {
+        lockRepository.lockFile(new FileLock(key, "another user", Privilege.WRITE));
+
+        Assertions.assertThatThrownBy(() -> fileService.save(USER, APPLICATION, PERIMETER, file, "content".getBytes(), true)).
+                isInstanceOf(LockException.class);
+
+        Mockito.verify(stagedFile, Mockito.never()).commit();
+        Mockito.verify(stagedFile).discard();
+    }
+
+    @Test
+    public void secondWriterIsRejectedWhileFileIsReadAndWritten() throws Exception {
+        lockRepository.lockFile(new FileLock(key, "a reader", Privilege.READ));
+        lockRepository.lockFile(new FileLock(key, "a writer", Privilege.WRITE));
+
+        Assertions.assertThatThrownBy(() -> fileService.save(USER, APPLICATION, PERIMETER, file, "content".getBytes(), true)).
+                isInstanceOf(LockException.class);
+
+        Mockito.verify(stagedFile, Mockito.never()).commit();
+        Mockito.verify(stagedFile).discard();
+    }
+
+    @Test
+    public void snapshotModeRequiresAtomicStaging() {
+        Mockito.when(fileRepository.isStagingAtomic()).thenReturn(false);
+        FileServiceOptions options = FileServiceOptions.builder().writeMode(FileServiceOptions.WriteMode.SNAPSHOT).build();
+
+        Assertions.assertThatThrownBy(() -> ServiceProvider.getInstance().
+                getFileServiceFactory().
+                createFileService(userRepository, applicationRepository, userRightRepository, fileRepository, lockRepository, 1000, TimeUnit.MILLISECONDS, options)).
+                isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void appendIsStagedWithCurrentContent() throws Exception {
+        Mockito.when(fileRepository.read(file)).thenReturn("previous".getBytes());
+        Mockito.when(fileRepository.openInputStream(file)).thenCallRealMethod();
+        Mockito.when(fileRepository.stage(Mockito.any(File.class), Mockito.any(InputStream.class))).thenCallRealMethod();
+        Mockito.when(fileRepository.stageAppend(Mockito.any(File.class), Mockito.any(InputStream.class))).thenCallRealMethod();
+
+        fileService.append(USER, APPLICATION, PERIMETER, file, " appended".getBytes(), false);
+
+        Mockito.verify(fileRepository).stage(Mockito.eq(file), Mockito.eq("previous appended".getBytes()));
+        Mockito.verify(stagedFile).commit();
+        Mockito.verify(fileRepository, Mockito.never()).append(Mockito.any(File.class), Mockito.any(byte[].class));
+    }
+}
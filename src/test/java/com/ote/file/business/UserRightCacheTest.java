@@ -0,0 +1,84 @@
+package com.ote.file.business;
+
+import com.ote.file.api.ServiceProvider;
+import com.ote.file.api.cache.IUserRightCache;
+import com.ote.file.spi.IUserRightRepository;
+import org.assertj.core.api.Assertions;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static com.ote.file.spi.IUserRightRepository.Privilege;
+
+public class UserRightCacheTest {
+
+    @Mock
+    private IUserRightRepository userRightRepository;
+
+    private IUserRightCache userRightCache;
+
+    private AutoCloseable mocks;
+
+    @Before
+    public void init() {
+        mocks = MockitoAnnotations.openMocks(this);
+
+        Mockito.when(userRightRepository.getPrivileges(Mockito.anyString(), Mockito.anyString(), Mockito.anyString())).thenReturn(Collections.singleton(Privilege.READ));
+
+        userRightCache = ServiceProvider.getInstance().
+                getFileServiceFactory().
+                createUserRightCache(userRightRepository, 100, 1, TimeUnit.HOURS);
+    }
+
+    @After
+    public void close() throws Exception {
+        mocks.close();
+    }
+
+    @Test
+    public void privilegesAreLoadedOnce() {
+        for (int i = 0; i < 10; i++) {
+            Assertions.assertThat(userRightCache.isAuthorized("user", "application", "perimeter", Privilege.READ)).isTrue();
+            Assertions.assertThat(userRightCache.isAuthorized("user", "application", "perimeter", Privilege.WRITE)).isFalse();
+        }
+
+        Mockito.verify(userRightRepository, Mockito.times(1)).getPrivileges("user", "application", "perimeter");
+        Assertions.assertThat(userRightCache.getStatistics().getMissCount()).isEqualTo(1);
+        Assertions.assertThat(userRightCache.getStatistics().getHitCount()).isEqualTo(19);
+        Assertions.assertThat(userRightCache.getStatistics().getHitRate()).isEqualTo(0.95);
+    }
+
+    @Test
+    public void privilegesAreReloadedWhenInvalidated() {
+        userRightCache.getPrivileges("user", "application", "perimeter");
+        userRightCache.getPrivileges("another user", "application", "perimeter");
+
+        Mockito.when(userRightRepository.getPrivileges(Mockito.anyString(), Mockito.anyString(), Mockito.anyString())).thenReturn(Collections.singleton(Privilege.WRITE));
+        userRightCache.invalidate("user", "application", "perimeter");
+
+        Assertions.assertThat(userRightCache.getPrivileges("user", "application", "perimeter")).containsOnly(Privilege.WRITE);
+        Assertions.assertThat(userRightCache.getPrivileges("another user", "application", "perimeter")).containsOnly(Privilege.READ);
+
+        userRightCache.invalidate("another user");
+        Assertions.assertThat(userRightCache.getPrivileges("another user", "application", "perimeter")).containsOnly(Privilege.WRITE);
+    }
+
+    @Test
+    public void privilegesAreReloadedWhenExpired() throws Exception {
+        IUserRightCache expiringCache = ServiceProvider.getInstance().
+                getFileServiceFactory().
+                createUserRightCache(userRightRepository, 100, 50, TimeUnit.MILLISECONDS);
+
+        expiringCache.getPrivileges("user", "application", "perimeter");
+        Thread.sleep(100);
+        expiringCache.getPrivileges("user", "application", "perimeter");
+
+        Mockito.verify(userRightRepository, Mockito.times(2)).getPrivileges("user", "application", "perimeter");
+    }
+}
@@ -9,6 +9,7 @@ import com.ote.file.api.model.Folder;
 import com.ote.file.mock.LockRepositoryMock;
 import com.ote.file.spi.*;
 import org.assertj.core.api.Assertions;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
@@ -17,6 +18,8 @@ import org.mockito.MockitoAnnotations;
 import org.mockito.Spy;
 import org.mockito.stubbing.Answer;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.concurrent.TimeUnit;
@@ -42,20 +45,28 @@ public class WriterTest {
 
     private IFileService fileService;
 
+    private AutoCloseable mocks;
+
     @Before
     public void init() {
-        MockitoAnnotations.initMocks(this);
+        mocks = MockitoAnnotations.openMocks(this);
 
         Mockito.doCallRealMethod().when(userRightRepository).isAuthorized(Mockito.anyString(), Mockito.anyString(), Mockito.anyString(), Mockito.any(Privilege.class));
         Mockito.doCallRealMethod().when(fileRepository).isFound(Mockito.anyString(), Mockito.anyString(), Mockito.any(Folder.class));
         Mockito.doCallRealMethod().when(fileRepository).isFound(Mockito.anyString(), Mockito.anyString(), Mockito.any(File.class));
-        Mockito.doCallRealMethod().when(fileRepository).append(Mockito.any(File.class), Mockito.any(byte[].class));
+        Mockito.doAnswer(invocation -> answerAppendFile(invocation.getArgument(0), invocation.getArgument(1))).
+                when(fileRepository).append(Mockito.any(File.class), Mockito.any(byte[].class));
 
         fileService = ServiceProvider.getInstance().
                 getFileServiceFactory().
                 createFileService(userRepository, applicationRepository, userRightRepository, fileRepository, lockRepository, 1000, TimeUnit.MILLISECONDS);
     }
 
+    @After
+    public void close() throws Exception {
+        mocks.close();
+    }
+
     @Test(expected = UserNotFoundException.class)
     public void userNotFound() throws Exception {
 
@@ -312,8 +323,74 @@ public class WriterTest {
         Assertions.assertThat(actual).isEqualTo(expected.getBytes());
     }
 
+    @Test
+    public void writeFromStreamOK() throws Exception {
+
+        String user = "a user";
+        String application = "an application";
+        String perimeter = "a perimeter";
+        Folder folder = new Folder(".", "target");
+        File file = new File(folder, "writeFromStreamOK.txt");
+        String expected = Utils.createDataSize(3 * IFileRepository.ChunkSize + 10);
+
+        Mockito.when(userRepository.isFound(Mockito.anyString())).thenReturn(true);
+        Mockito.when(applicationRepository.isFound(Mockito.anyString())).thenReturn(true);
+        Mockito.when(applicationRepository.isFound(Mockito.anyString(), Mockito.anyString())).thenReturn(true);
+        Mockito.when(userRightRepository.getPrivileges(Mockito.anyString(), Mockito.anyString(), Mockito.anyString())).thenReturn(Collections.singleton(Privilege.WRITE));
+        Mockito.when(fileRepository.getFolders(Mockito.anyString(), Mockito.anyString())).thenReturn(Collections.singleton(folder));
+        Mockito.when(fileRepository.read(Mockito.any(File.class))).thenAnswer(inv -> Utils.readFile(file.getPath()));
+        Mockito.doCallRealMethod().when(fileRepository).write(Mockito.any(File.class), Mockito.any(InputStream.class));
+        Mockito.doCallRealMethod().when(fileRepository).append(Mockito.any(File.class), Mockito.any(InputStream.class));
+        Mockito.doAnswer(invocation -> answerSaveFile(invocation.getArgument(0), invocation.getArgument(1))).
+                when(fileRepository).write(Mockito.any(File.class), Mockito.any(byte[].class));
+
+        fileService.save(user, application, perimeter, file, new ByteArrayInputStream(expected.getBytes()), true);
+
+        byte[] actual = Utils.readFile(file.getPath());
+
+        Assertions.assertThat(actual).isEqualTo(expected.getBytes());
+        // content is forwarded to the repository chunk by chunk
+        Mockito.verify(fileRepository, Mockito.times(3)).append(Mockito.any(File.class), Mockito.any(byte[].class));
+    }
+
+    @Test
+    public void appendFromStreamOK_FileExist() throws Exception {
+
+        String user = "a user";
+        String application = "an application";
+        String perimeter = "a perimeter";
+        Folder folder = new Folder(".", "target");
+        File file = new File(folder, "appendFromStreamOK_FileExist.txt");
+        String expected = "appendFromStreamOK_FileExist";
+
+        String currentContent = "current";
+        Utils.saveFile(file.getPath(), currentContent.getBytes());
+
+        Mockito.when(userRepository.isFound(Mockito.anyString())).thenReturn(true);
+        Mockito.when(applicationRepository.isFound(Mockito.anyString())).thenReturn(true);
+        Mockito.when(applicationRepository.isFound(Mockito.anyString(), Mockito.anyString())).thenReturn(true);
+        Mockito.when(userRightRepository.getPrivileges(Mockito.anyString(), Mockito.anyString(), Mockito.anyString())).thenReturn(Collections.singleton(Privilege.WRITE));
+        Mockito.when(fileRepository.getFolders(Mockito.anyString(), Mockito.anyString())).thenReturn(Collections.singleton(folder));
+        Mockito.when(fileRepository.getFiles(Mockito.anyString(), Mockito.anyString(), Mockito.any(Folder.class))).thenReturn(Collections.singleton(file));
+        Mockito.when(fileRepository.read(Mockito.any(File.class))).thenAnswer(inv -> Utils.readFile(file.getPath()));
+        Mockito.doCallRealMethod().when(fileRepository).append(Mockito.any(File.class), Mockito.any(InputStream.class));
+        Mockito.doAnswer(invocation -> answerSaveFile(invocation.getArgument(0), invocation.getArgument(1))).
+                when(fileRepository).write(Mockito.any(File.class), Mockito.any(byte[].class));
+
+        fileService.append(user, application, perimeter, file, new ByteArrayInputStream(expected.getBytes()), true);
+
+        byte[] actual = Utils.readFile(file.getPath());
+
+        Assertions.assertThat(actual).isEqualTo((currentContent + expected).getBytes());
+    }
+
     private static Answer answerSaveFile(File file, byte[] content) {
         Utils.saveFile(file.getPath(), content);
         return null;
     }
+
+    private static Answer answerAppendFile(File file, byte[] content) {
+        Utils.appendFile(file.getPath(), content);
+        return null;
+    }
 }
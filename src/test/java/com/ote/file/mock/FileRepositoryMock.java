@@ -8,6 +8,7 @@ import lombok.Data;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.*;
@@ -44,8 +45,7 @@ public class FileRepositoryMock implements IFileRepository {
     @Override
     public void append(File file, byte[] content) {
         increment(file, Type.APPEND);
-        StringBuilder sb = new StringBuilder().append(new String(read(file))).append(new String(content));
-        write(file, sb.toString().getBytes());
+        Utils.appendFile(file.getPath(), content);
     }
 
     @Override
@@ -54,6 +54,16 @@ public class FileRepositoryMock implements IFileRepository {
         return Utils.readFile(file.getPath());
     }
 
+    @Override
+    public InputStream openInputStream(File file) {
+        increment(file, Type.READ);
+        try {
+            return Files.newInputStream(Paths.get(file.getPath()));
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     private synchronized void increment(File file, Type type) {
         Counter counter = new Counter(file.getName(), type);
         counterMap.merge(counter, 1, (a, b) -> a + b);
@@ -2,6 +2,7 @@ package com.ote.file.mock;
 
 import com.ote.file.spi.ILock;
 import com.ote.file.spi.ILockRepository;
+import com.ote.file.spi.IUserRightRepository;
 import lombok.Getter;
 
 import java.util.*;
@@ -11,7 +12,7 @@ import java.util.concurrent.locks.ReentrantLock;
 
 public class LockRepositoryMock implements ILockRepository {
 
-    private final List<FileLock> keyList = Collections.synchronizedList(new ArrayList<>());
+    private final Map<KeyFileLock, List<FileLock>> keyMap = new ConcurrentHashMap<>();
 
     private final Map<String, Long> timeToWait = new ConcurrentHashMap<>();
 
@@ -20,9 +21,12 @@ public class LockRepositoryMock implements ILockRepository {
 
     @Override
     public Optional<FileLock> getFileLock(KeyFileLock key) {
-        return keyList.stream().
-                filter(p -> p.getKey().equals(key)).
-                findAny();
+        // the WRITE lock if any, otherwise one of the READ locks
+        return Optional.ofNullable(keyMap.get(key)).
+                flatMap(p -> p.stream().
+                        filter(fileLock -> fileLock.getPrivilege() == IUserRightRepository.Privilege.WRITE).
+                        findFirst().
+                        or(() -> p.stream().findFirst()));
     }
 
     @Override
@@ -34,12 +38,20 @@ public class LockRepositoryMock implements ILockRepository {
             } catch (Exception ignored) {
             }
         }
-        keyList.add(key);
+        keyMap.merge(key.getKey(), Collections.singletonList(key), (current, added) -> {
+            List<FileLock> fileLocks = new ArrayList<>(current);
+            fileLocks.addAll(added);
+            return fileLocks;
+        });
     }
 
     @Override
-    public void unlockFile(KeyFileLock key) {
-        keyList.removeIf(p -> p.getKey().equals(key));
+    public void unlockFile(FileLock fileLock) {
+        keyMap.computeIfPresent(fileLock.getKey(), (key, current) -> {
+            List<FileLock> fileLocks = new ArrayList<>(current);
+            fileLocks.remove(fileLock);
+            return fileLocks.isEmpty() ? null : fileLocks;
+        });
     }
 
     class SynchronizedMock implements ILock {
@@ -71,7 +83,7 @@ public class LockRepositoryMock implements ILockRepository {
     }
 
     public void reset() {
-        keyList.clear();
+        keyMap.clear();
         timeToWait.clear();
     }
 }
@@ -0,0 +1,81 @@
+package com.ote.file.spi;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+public class BufferPoolTest {
+
+    private final BufferPool bufferPool = new BufferPool(1024, 64 * 1024, 2);
+
+    @Test
+    public void buffersAreDirectAndSizedByClass() {
+        try (BufferPool.Buffer buffer = bufferPool.acquire(3000)) {
+            ByteBuffer byteBuffer = buffer.get();
+            Assertions.assertThat(byteBuffer.isDirect()).isTrue();
+            Assertions.assertThat(byteBuffer.capacity()).isEqualTo(4096);
+            Assertions.assertThat(byteBuffer.limit()).isEqualTo(3000);
+            Assertions.assertThat(byteBuffer.position()).isZero();
+        }
+        try (BufferPool.Buffer buffer = bufferPool.acquire(10)) {
+            Assertions.assertThat(buffer.get().capacity()).isEqualTo(1024);
+        }
+    }
+
+    @Test
+    public void releasedBuffersAreReused() {
+        ByteBuffer first;
+        try (BufferPool.Buffer buffer = bufferPool.acquire(2048)) {
+            first = buffer.get();
+            first.put((byte) 1);
+        }
+        try (BufferPool.Buffer buffer = bufferPool.acquire(2000)) {
+            Assertions.assertThat(buffer.get()).isSameAs(first);
+            Assertions.assertThat(buffer.get().position()).isZero();
+        }
+        Assertions.assertThat(bufferPool.getAllocationCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void buffersBeyondMaximumSizeAreNotPooled() {
+        try (BufferPool.Buffer buffer = bufferPool.acquire(100 * 1024)) {
+            Assertions.assertThat(buffer.get().capacity()).isEqualTo(100 * 1024);
+        }
+        try (BufferPool.Buffer buffer = bufferPool.acquire(100 * 1024)) {
+            Assertions.assertThat(buffer.get().capacity()).isEqualTo(100 * 1024);
+        }
+        Assertions.assertThat(bufferPool.getAllocationCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void onlyMaxPooledBuffersAreKept() {
+        BufferPool.Buffer[] buffers = new BufferPool.Buffer[4];
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = bufferPool.acquire(1024);
+        }
+        for (BufferPool.Buffer buffer : buffers) {
+            buffer.close();
+        }
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = bufferPool.acquire(1024);
+        }
+
+        // 2 buffers were kept by the pool, the 2 others have been allocated again
+        Assertions.assertThat(bufferPool.getAllocationCount()).isEqualTo(6);
+    }
+
+    @Test
+    public void leaksAreCounted() {
+        BufferPool.Buffer leaked = bufferPool.acquire(1024);
+        BufferPool.Buffer released = bufferPool.acquire(1024);
+        released.close();
+        released.close();
+
+        Assertions.assertThat(bufferPool.getOutstandingCount()).isEqualTo(1);
+        Assertions.assertThatThrownBy(released::get).isInstanceOf(IllegalStateException.class);
+
+        leaked.close();
+        Assertions.assertThat(bufferPool.getOutstandingCount()).isZero();
+    }
+}